@@ -5,7 +5,6 @@ import android.app.SearchManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
@@ -15,6 +14,7 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -26,20 +26,24 @@ import android.widget.SearchView;
 import android.widget.Toast;
 
 import java.util.List;
-import java.util.Map;
 
+import anders.olsen.moviebrowser.BuildConfig;
 import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.fragment.LoginDialogFragment;
+import anders.olsen.moviebrowser.image.ImageLoader;
 import anders.olsen.moviebrowser.fragment.RecyclerMediaListFragment;
 import anders.olsen.moviebrowser.listener.DialogListener;
+import anders.olsen.moviebrowser.listener.SessionListener;
 import anders.olsen.moviebrowser.loader.AccountService;
 import anders.olsen.moviebrowser.loader.MovieAccountService;
 import anders.olsen.moviebrowser.loader.MovieService;
+import anders.olsen.moviebrowser.loader.RequestScope;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.loader.TmdbManager;
 import anders.olsen.moviebrowser.loader.TvAccountService;
 import anders.olsen.moviebrowser.loader.TvService;
 import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.util.FrameTimeMonitor;
 
 
 /**
@@ -50,6 +54,8 @@ import anders.olsen.moviebrowser.model.MediaObject;
  * The frame layout is where the actual application content is loaded, through the method
  * addContentView.
  * NB! Subactivites has to use addContentView, not setContentView!
+ * <p>
+ * The activity is notified when the user logs in, see {@link #onSessionChanged(boolean)}.
  *
  * @author Anders Engen Olsen
  * @see #addContentView(int)
@@ -57,11 +63,18 @@ import anders.olsen.moviebrowser.model.MediaObject;
  */
 
 public class BaseActivity extends AppCompatActivity
-        implements DialogListener {
+        implements DialogListener, SessionListener {
+
+    private final static String LOG_TAG = BaseActivity.class.getSimpleName();
+
     /**
-     * Key for media objects with intents
+     * Key for the id of a media object with intents
      */
-    public static final String MEDIA_OBJECT_KEY = "media_object_key";
+    public static final String MEDIA_OBJECT_ID_KEY = "media_object_id_key";
+    /**
+     * Key for the type of a media object with intents, movie / tv
+     */
+    public static final String MEDIA_OBJECT_TYPE_KEY = "media_object_type_key";
     /**
      * MEDIA_TYPE_KEY, either MEDIA_TYPE_TV or MEDIA_TYPE_MOVIE.
      */
@@ -91,10 +104,6 @@ public class BaseActivity extends AppCompatActivity
      * Result from authenticating through browser
      */
     private static final int URL_RESULT_KEY = 5;
-    /**
-     * Shared pref where genres are saved.
-     */
-    public static String SHARED_PREF_GENRES = "shared_pref_genres";
     /**
      * @see TmdbManager
      */
@@ -119,10 +128,18 @@ public class BaseActivity extends AppCompatActivity
      * Account calls for TV
      */
     protected TvAccountService tvAccountService;
+    /**
+     * Requests made by the activity, cancelled when it is destroyed
+     */
+    protected RequestScope requestScope;
     /**
      * Layout for subactivities
      */
     private FrameLayout frameLayout;
+    /**
+     * Logging jank while the activity is visible, debug builds only
+     */
+    private FrameTimeMonitor frameTimeMonitor;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -134,12 +151,12 @@ public class BaseActivity extends AppCompatActivity
         accountService = tmdb.getAccountService();
         movieAccountService = tmdb.getMovieAccountService();
         tvAccountService = tmdb.getTvAccountService();
+        requestScope = tmdb.newScope();
+        accountService.addSessionListener(this);
 
-        // Fetching genres.
-        if (!tmdb.hasGenres()) {
-            movieService.getAllGenres(null);
-            tvService.getAllGenres(null);
-        }
+        // Refreshing genres, if stale.
+        movieService.getAllGenres(null);
+        tvService.getAllGenres(null);
 
         setContentView(R.layout.activity_base);
 
@@ -148,6 +165,38 @@ public class BaseActivity extends AppCompatActivity
         setSupportActionBar(toolbar);
 
         frameLayout = findViewById(R.id.frame);
+
+        if (BuildConfig.DEBUG)
+            frameTimeMonitor = new FrameTimeMonitor(getClass().getSimpleName(),
+                    getWindowManager().getDefaultDisplay().getRefreshRate());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        if (frameTimeMonitor != null)
+            frameTimeMonitor.start();
+    }
+
+    @Override
+    protected void onPause() {
+        if (frameTimeMonitor != null) {
+            frameTimeMonitor.stop();
+            Log.d(LOG_TAG, "Posters: " + ImageLoader.getInstance(this).getStats());
+        }
+
+        super.onPause();
+    }
+
+    /**
+     * Cancelling the requests made by the activity, so it is not kept alive by listeners.
+     */
+    @Override
+    protected void onDestroy() {
+        accountService.removeSessionListener(this);
+        requestScope.destroy();
+        super.onDestroy();
     }
 
     /**
@@ -245,6 +294,29 @@ public class BaseActivity extends AppCompatActivity
         return true;
     }
 
+    /**
+     * Hiding login when the user is logged in.
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem login = menu.findItem(R.id.nav_login);
+        if (login != null)
+            login.setVisible(!accountService.isLoggedIn());
+
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    /**
+     * Implementation of {@link SessionListener}, fired when the user logs in.
+     * Updating the menu. Subactivities showing account data reload it.
+     *
+     * @param loggedIn true if the user has a session
+     */
+    @Override
+    public void onSessionChanged(boolean loggedIn) {
+        invalidateOptionsMenu();
+    }
+
     /**
      * Clicks in OptionMenu
      */
@@ -297,29 +369,19 @@ public class BaseActivity extends AppCompatActivity
         fragmentTransaction.commit();
     }
 
-    /**
-     * Returning all genres if downloaded.
-     * Genres are fetched from SharedPrefs
-     *
-     * @return Map with genres
-     */
-    protected Map<String, ?> getGenres() {
-        // Map with genres from Shared Prefs
-        SharedPreferences prefs = getSharedPreferences(SHARED_PREF_GENRES,
-                Context.MODE_PRIVATE);
-        return prefs.getAll();
-    }
-
     /**
      * Starting a {@link MediaObjectActivity}.
-     * Used in several subactivities
+     * Used in several subactivities.
+     * Only type and id are passed, the mediaobject is found with
+     * {@link MediaObject#find(String, int)}.
      *
      * @param context     subactivity context
      * @param mediaObject {@link MediaObject} to show
      */
     protected final void startMediaObjectActivity(Context context, MediaObject mediaObject) {
         Intent intent = new Intent(context, MediaObjectActivity.class);
-        intent.putExtra(MEDIA_OBJECT_KEY, mediaObject);
+        intent.putExtra(MEDIA_OBJECT_TYPE_KEY, mediaObject.getType());
+        intent.putExtra(MEDIA_OBJECT_ID_KEY, mediaObject.getId());
         startActivity(intent);
     }
 
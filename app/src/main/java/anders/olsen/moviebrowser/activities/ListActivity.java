@@ -113,6 +113,23 @@ public class ListActivity extends BaseActivity implements
             setTitle(R.string.favourites);
         }
 
+        // Pages from before are replaced
+        requestScope.cancel();
+        fetchList(1, movieAccountService);
+        fetchList(1, tvAccountService);
+    }
+
+    /**
+     * Fetching the lists when the user has logged in while the activity is shown.
+     */
+    @Override
+    public void onSessionChanged(boolean loggedIn) {
+        super.onSessionChanged(loggedIn);
+
+        if (!loggedIn || type == UNINITIALIZED)
+            return;
+
+        requestScope.cancel();
         fetchList(1, movieAccountService);
         fetchList(1, tvAccountService);
     }
@@ -233,7 +250,7 @@ public class ListActivity extends BaseActivity implements
             fragment = tvTab;
 
         if (type == MEDIA_LIST_FAVORITES) {
-            saveable.getFavoriteList(page, new TmdbListener<ArrayList<MediaObject>>() {
+            saveable.getFavoriteList(page, requestScope.bind(new TmdbListener<ArrayList<MediaObject>>() {
                 @Override
                 public void onSuccess(ArrayList<MediaObject> result) {
                     if (page == 1)
@@ -246,9 +263,9 @@ public class ListActivity extends BaseActivity implements
                 public void onError(String result) {
                     showToast(result);
                 }
-            });
+            }));
         } else if (type == MEDIA_LIST_WATCHLIST)
-            saveable.getWatchlist(page, new TmdbListener<ArrayList<MediaObject>>() {
+            saveable.getWatchlist(page, requestScope.bind(new TmdbListener<ArrayList<MediaObject>>() {
                 @Override
                 public void onSuccess(ArrayList<MediaObject> result) {
                     if (page == 1)
@@ -261,6 +278,6 @@ public class ListActivity extends BaseActivity implements
                 public void onError(String result) {
                     showToast(result);
                 }
-            });
+            }));
     }
 }
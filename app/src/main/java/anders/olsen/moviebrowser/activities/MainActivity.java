@@ -8,29 +8,45 @@ import android.view.View;
 import android.widget.Button;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.adapter.RecyclerAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerImageAdapter;
+import anders.olsen.moviebrowser.database.HomeSnapshot;
+import anders.olsen.moviebrowser.image.ImageLoader;
+import anders.olsen.moviebrowser.image.PosterPrefetcher;
+import anders.olsen.moviebrowser.listener.CachedTmdbListener;
 import anders.olsen.moviebrowser.listener.EndlessRecyclerViewScrollListener;
+import anders.olsen.moviebrowser.listener.PageBuffer;
+import anders.olsen.moviebrowser.listener.PrefetchTmdbListener;
 import anders.olsen.moviebrowser.listener.RecyclerClickListener;
 import anders.olsen.moviebrowser.loader.BaseMovieTvService;
 import anders.olsen.moviebrowser.loader.MovieService;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.loader.TvService;
 import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.util.StartupTrace;
 
 
 /**
  * Launcher activity for the application.
  * The activity contains several Buttons, which starts other activities.
  * In addition to this, the activity also contains 2 horizontal recyclerviews with mediaobjects.
+ * <p>
+ * The rows shown last time are read from a {@link HomeSnapshot} before the first frame,
+ * and replaced when the fresh pages are downloaded.
  *
  * @author Anders Engen Olsen
  */
 public class MainActivity extends BaseActivity
         implements View.OnClickListener, RecyclerClickListener.OnItemClickListener {
 
+    /**
+     * Max number of pages fetched ahead of the scroll position in each recyclerview.
+     */
+    private static final int PAGES_AHEAD = 2;
+
     /**
      * ArrayList with movies for recyclerviews.
      */
@@ -51,31 +67,108 @@ public class MainActivity extends BaseActivity
      * RecyclerViews
      */
     private RecyclerView moviesRecyclerView, tvRecyclerView;
+    /**
+     * Pages for the recyclerviews, handed to the adapters in order
+     */
+    private PageBuffer<MediaObject> movieBuffer, tvBuffer;
+    /**
+     * Prefetching posters for the recyclerviews
+     */
+    private PosterPrefetcher moviePrefetcher, tvPrefetcher;
+    /**
+     * Where the rows shown came from, logged by the StartupTrace
+     */
+    private String rowsSource = "network";
+    /**
+     * True when fresh rows are shown, which are not in the snapshot yet
+     */
+    private boolean snapshotChanged;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.begin();
         super.onCreate(savedInstanceState);
         addContentView(R.layout.activity_main);
 
         moviesList = new ArrayList<>();
         tvList = new ArrayList<>();
+
+        // Rows shown last time, until the fresh pages are downloaded
+        HomeSnapshot snapshot = HomeSnapshot.read(this);
+        if (snapshot != null) {
+            moviesList.addAll(snapshot.getMovies());
+            tvList.addAll(snapshot.getTv());
+            rowsSource = "snapshot";
+            StartupTrace.mark("Snapshot read");
+        }
+
         moviesRecyclerView = findViewById(R.id.recycler_main_movie);
         tvRecyclerView = findViewById(R.id.recycler_main_tv);
         movieAdapter = new RecyclerImageAdapter(this, moviesList);
         tvAdapter = new RecyclerImageAdapter(this, tvList);
+        moviePrefetcher = new PosterPrefetcher(moviesRecyclerView);
+        tvPrefetcher = new PosterPrefetcher(tvRecyclerView);
+        movieBuffer = createPageBuffer(moviesList, movieAdapter, moviePrefetcher);
+        tvBuffer = createPageBuffer(tvList, tvAdapter, tvPrefetcher);
+
+        if (StartupTrace.isTracing())
+            traceFirstPoster();
 
-        setUpRecyclers(movieAdapter, moviesRecyclerView, movieService);
-        setUpRecyclers(tvAdapter, tvRecyclerView, tvService);
+        setUpRecyclers(movieAdapter, moviesRecyclerView, movieBuffer, moviePrefetcher,
+                movieService);
+        setUpRecyclers(tvAdapter, tvRecyclerView, tvBuffer, tvPrefetcher, tvService);
         setUpButtons();
     }
 
+    /**
+     * Cancelling poster prefetches which have not started.
+     */
+    @Override
+    protected void onDestroy() {
+        moviePrefetcher.cancel();
+        tvPrefetcher.cancel();
+        super.onDestroy();
+    }
+
+    /**
+     * Storing the rows shown, if fresh rows have been downloaded.
+     */
+    @Override
+    protected void onStop() {
+        if (snapshotChanged) {
+            HomeSnapshot.save(this, moviesList, tvList);
+            snapshotChanged = false;
+        }
+
+        super.onStop();
+    }
+
+    /**
+     * Logging the time to the first poster shown in either row.
+     *
+     * @see StartupTrace
+     */
+    private void traceFirstPoster() {
+        ImageLoader.PosterCallback callback = new ImageLoader.PosterCallback() {
+            @Override
+            public void onPosterShown() {
+                StartupTrace.posterShown(rowsSource);
+                movieAdapter.setPosterCallback(null);
+                tvAdapter.setPosterCallback(null);
+            }
+        };
+
+        movieAdapter.setPosterCallback(callback);
+        tvAdapter.setPosterCallback(callback);
+    }
+
     /**
      * Implementation of RecyclerClickListener.OnItemClickListener.
      * Starting a MediaObjectActivity.
      */
     @Override
     public void onItemClick(RecyclerAdapter adapter, int position) {
-        startMediaObjectActivity((MediaObject) adapter.getElement(position));
+        startMediaObjectActivity(this, (MediaObject) adapter.getElement(position));
     }
 
     /**
@@ -109,15 +202,51 @@ public class MainActivity extends BaseActivity
             startActivity(intent);
     }
 
+    /**
+     * Creating a buffer which appends pages to a list in order, and updates the adapter.
+     * The first page replaces the list, which may contain the stored first page,
+     * and the posters prefetched for the replaced list are cancelled.
+     *
+     * @param list       list shown by the adapter
+     * @param adapter    RecyclerImageAdapter
+     * @param prefetcher PosterPrefetcher for the recyclerview
+     * @return PageBuffer
+     */
+    private PageBuffer<MediaObject> createPageBuffer(final ArrayList<MediaObject> list,
+                                                     final RecyclerImageAdapter adapter,
+                                                     final PosterPrefetcher prefetcher) {
+        return new PageBuffer<>(1, PAGES_AHEAD,
+                new PageBuffer.PageSink<MediaObject>() {
+                    @Override
+                    public void onPage(int page, List<MediaObject> items) {
+                        if (page == 1) {
+                            list.clear();
+                            prefetcher.cancel();
+                            rowsSource = "network";
+                            snapshotChanged = true;
+                            StartupTrace.mark("Fresh rows shown");
+                        }
+                        list.addAll(items);
+                        adapter.setContent(list);
+                    }
+                });
+    }
+
     /**
      * Initiating RecyclerViews.
+     * Up to {@link #PAGES_AHEAD} pages are fetched ahead of the scroll position,
+     * and posters are prefetched for the items after the visible ones.
      *
      * @see RecyclerImageAdapter
+     * @see PageBuffer
+     * @see PosterPrefetcher
      * @see #setRecyclerListener(RecyclerView)
      * @see MovieService#getPopular(int, TmdbListener)
      * @see TvService#getPopular(int, TmdbListener)
      */
     private void setUpRecyclers(RecyclerImageAdapter adapter, RecyclerView view,
+                                PageBuffer<MediaObject> buffer,
+                                final PosterPrefetcher prefetcher,
                                 final BaseMovieTvService service) {
 
         view.setAdapter(adapter);
@@ -133,48 +262,100 @@ public class MainActivity extends BaseActivity
                         loadNextPage(++page, service);
                     }
                 };
+        scrollListenerMovie.setPagesAhead(PAGES_AHEAD);
+        scrollListenerMovie.setPageBuffer(buffer);
 
         setRecyclerListener(view);
 
         view.addOnScrollListener(scrollListenerMovie);
+
+        // Prefetching posters to the right of the visible ones, also when pages are added
+        view.addOnScrollListener(prefetcher);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                prefetcher.prefetch();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                prefetcher.prefetch();
+            }
+        });
+
         loadNextPage(1, service);
     }
 
     /**
-     * Loading next page with data from the api
+     * Loading next page with data from the api.
+     * The page is put in the PageBuffer, which hands it to the adapter in order.
+     * The first page stored on the device is shown at once, while the fresh one is downloaded.
+     * Later pages are fetched ahead of the scroll position, with low priority.
      *
      * @param page    page to load from api
      * @param service BaseMovieTvService
+     * @see PrefetchTmdbListener
      */
-    private void loadNextPage(int page, BaseMovieTvService service) {
-        final ArrayList<MediaObject> list;
-        final RecyclerImageAdapter adapter;
+    private void loadNextPage(final int page, BaseMovieTvService service) {
+        final PageBuffer<MediaObject> buffer =
+                (service instanceof MovieService) ? movieBuffer : tvBuffer;
+        final int generation = buffer.getGeneration();
+
+        if (page > 1) {
+            service.getPopular(page, requestScope.bind(new PrefetchTmdbListener<ArrayList<MediaObject>>() {
+                @Override
+                public void onSuccess(ArrayList<MediaObject> result) {
+                    buffer.put(generation, page, result);
+                }
 
-        if (service instanceof MovieService) {
-            list = moviesList;
-            adapter = movieAdapter;
-        } else {
-            list = tvList;
-            adapter = tvAdapter;
+                @Override
+                public void onError(String result) {
+                    showToast(result);
+                }
+            }));
+            return;
         }
 
         service.getPopular(page,
-                new TmdbListener<ArrayList<MediaObject>>() {
+                requestScope.bind(new CachedTmdbListener<ArrayList<MediaObject>>() {
+                    @Override
+                    public void onCached(ArrayList<MediaObject> result) {
+                        showStoredPage(buffer, result);
+                    }
+
                     @Override
                     public void onSuccess(ArrayList<MediaObject> result) {
-                        list.addAll(result);
-                        adapter.setContent(list);
-                        adapter.notifyDataSetChanged();
+                        buffer.put(generation, page, result);
                     }
 
                     @Override
                     public void onError(String result) {
                         showToast(result);
                     }
-                }
+                })
         );
     }
 
+    /**
+     * Showing the stored first page, until the fresh first page replaces it.
+     * Not shown if the row is already shown from the snapshot.
+     *
+     * @param buffer PageBuffer for the recyclerview
+     * @param result stored first page
+     */
+    private void showStoredPage(PageBuffer<MediaObject> buffer, ArrayList<MediaObject> result) {
+        ArrayList<MediaObject> list = (buffer == movieBuffer) ? moviesList : tvList;
+        RecyclerImageAdapter adapter = (buffer == movieBuffer) ? movieAdapter : tvAdapter;
+
+        if (!list.isEmpty())
+            return;
+
+        rowsSource = "stored";
+        StartupTrace.mark("Stored rows shown");
+        list.addAll(result);
+        adapter.setContent(list);
+    }
+
     /**
      * Setting ClickListener for a RecyclerView.
      *
@@ -200,18 +381,4 @@ public class MainActivity extends BaseActivity
         moviesBtn.setOnClickListener(this);
         tvBtn.setOnClickListener(this);
     }
-
-    /**
-     * Starting MediaObjectActivity, sending the clicked MediaObject with the intent.
-     *
-     * @param mediaObject Mediaobject to show in MediaObjectActivity
-     * @see MediaObject
-     * @see MediaObjectActivity
-     */
-    private void startMediaObjectActivity(MediaObject mediaObject) {
-        Intent intent = new Intent(this, MediaObjectActivity.class);
-        intent.putExtra(MEDIA_OBJECT_KEY, mediaObject);
-
-        startActivity(intent);
-    }
 }
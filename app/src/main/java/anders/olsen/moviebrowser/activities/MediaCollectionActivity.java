@@ -8,29 +8,39 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.view.ViewPager;
 import android.util.Log;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.adapter.MainPagerAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerMediaListAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerStringListAdapter;
+import anders.olsen.moviebrowser.constants.TmdbConstants;
+import anders.olsen.moviebrowser.database.GenreUsage;
 import anders.olsen.moviebrowser.fragment.RecyclerMediaListFragment;
 import anders.olsen.moviebrowser.fragment.RecyclerStringListFragment;
 import anders.olsen.moviebrowser.listener.ListFragmentListener;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.loader.BaseMovieTvService;
+import anders.olsen.moviebrowser.loader.FetchPlan;
+import anders.olsen.moviebrowser.loader.RequestScope;
 import anders.olsen.moviebrowser.model.Genre;
 import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.model.MediaPages;
 
 
 /**
  * Activity containing a TabLayout with 2 tabs, highest rated and most popular.
  * This activity is used both for movies and TV shows.
- * Whether it is movie / TV shows is determined by key: BaseActivity.MEDIA_OBJECT_KEY
+ * Whether it is movie / TV shows is determined by key: BaseActivity.MEDIA_TYPE_KEY
  * <p>
  * Each tab contains a fragment with a list with MediaObjects.
+ * When the activity opens, the first pages of all tabs and the genres are requested at once,
+ * the visible tab first. The first page of the genres chosen most often is prefetched, so
+ * they are shown at once when chosen.
  *
  * @author Anders Engen Olsen
  * @see RecyclerMediaListFragment
@@ -76,6 +86,46 @@ public class MediaCollectionActivity extends BaseActivity implements
      */
     private Genre chosenGenre;
 
+    /**
+     * Requests for the chosen genre, cancelled when another genre is chosen
+     */
+    private RequestScope genreScope;
+
+    /**
+     * Mediaobject type, movie / tv, of the service
+     */
+    private String mediaType;
+
+    /**
+     * Number of times each genre is chosen
+     */
+    private GenreUsage genreUsage;
+
+    /**
+     * First page of the genres chosen most often, by genre id
+     */
+    private final SparseArray<ArrayList<MediaObject>> prefetchedGenres = new SparseArray<>();
+
+    /**
+     * Number of genres prefetched
+     */
+    private static final int PREFETCHED_GENRES = 3;
+
+    /**
+     * Position of the upcoming tab
+     */
+    private static final int UPCOMING_POSITION = 1;
+
+    /**
+     * True while the first pages of the upcoming tab are loading
+     */
+    private boolean upcomingLoading;
+
+    /**
+     * True if the first pages of the upcoming tab are loading as a prefetch
+     */
+    private boolean upcomingPrefetching;
+
     /**
      * Implementation of click event in the RecyclerMediaListFragment.
      * Method called when a mediaobject has been clicked in the list,
@@ -110,8 +160,21 @@ public class MediaCollectionActivity extends BaseActivity implements
                     break;
                 }
             }
-            // Loading from service
-            loadGenreMediaFromApi(1, chosenGenre);
+            // Loading from service, the previous genre is no longer needed
+            genreScope.cancel();
+            if (chosenGenre == null) {
+                loadGenreMediaFromApi(1, null);
+                return;
+            }
+
+            genreUsage.record(mediaType, chosenGenre.getId());
+
+            ArrayList<MediaObject> prefetched = prefetchedGenres.get(chosenGenre.getId());
+            if (prefetched != null) {
+                genreMediaTab.setContent(new ArrayList<>(prefetched));
+                genreTab.showChildFragment(genreMediaTab);
+            } else
+                loadGenreMediaFromApi(1, chosenGenre);
         }
     }
 
@@ -125,9 +188,9 @@ public class MediaCollectionActivity extends BaseActivity implements
     @Override
     public void onScrollEnd(int page, Fragment fragment) {
         if (fragment == topRatedTab) {
-            loadTopRatedFromApi(++page);
+            loadTopRatedFromApi(++page, true);
         } else if (fragment == upcomingTab) {
-            loadUpcomingFromApi(++page);
+            loadUpcomingFromApi(++page, true);
         } else if (fragment == genreMediaTab) {
             loadGenreMediaFromApi(++page, chosenGenre);
         }
@@ -139,9 +202,7 @@ public class MediaCollectionActivity extends BaseActivity implements
      * Loading data from API.
      *
      * @see #handleIntent(Intent, Bundle)
-     * @see #loadUpcomingFromApi(int)
-     * @see #loadTopRatedFromApi(int)
-     * @see #fetchGenres()
+     * @see #warmUp()
      * @see #setUpTabLayout()
      */
     @Override
@@ -155,17 +216,47 @@ public class MediaCollectionActivity extends BaseActivity implements
         genreMediaTab = new RecyclerMediaListFragment();
         genreTab = new RecyclerStringListFragment();
         genreList = new ArrayList<>();
+        genreScope = tmdb.newScope();
+        genreUsage = new GenreUsage(this);
 
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
         // Initial setup.
         handleIntent(getIntent(), savedInstanceState);
-        loadUpcomingFromApi(1);
-        loadTopRatedFromApi(1);
-        fetchGenres();
+        warmUp();
         setUpTabLayout();
     }
 
+    /**
+     * Requesting the first pages of all tabs and the genres at once.
+     * Top rated is the visible tab when the activity opens, the other tabs are prefetched.
+     *
+     * @see FetchPlan
+     * @see #prefetchGenres()
+     */
+    private void warmUp() {
+        new FetchPlan()
+                .add(new FetchPlan.Step() {
+                    @Override
+                    public void fetch(boolean visible) {
+                        loadTopRatedFromApi(1, visible);
+                    }
+                }, true)
+                .add(new FetchPlan.Step() {
+                    @Override
+                    public void fetch(boolean visible) {
+                        loadUpcomingFromApi(1, visible);
+                    }
+                }, false)
+                .add(new FetchPlan.Step() {
+                    @Override
+                    public void fetch(boolean visible) {
+                        fetchGenres(visible);
+                    }
+                }, false)
+                .run();
+    }
+
     /**
      * Handling the intent from calling activity.
      * The MEDIA_TYPE_KEY decide the title of the activity,
@@ -180,9 +271,11 @@ public class MediaCollectionActivity extends BaseActivity implements
             int type = intent.getIntExtra(BaseActivity.MEDIA_TYPE_KEY, 0);
             if (type == BaseActivity.MEDIA_TYPE_TV) {
                 service = tvService;
+                mediaType = TmdbConstants.MEDIA_TYPE_TV;
                 setTitle(R.string.tv_shows);
             } else if (type == BaseActivity.MEDIA_TYPE_MOVIE) {
                 service = movieService;
+                mediaType = TmdbConstants.MEDIA_TYPE_MOVIE;
                 setTitle(R.string.movies);
             }
         } else {
@@ -195,42 +288,78 @@ public class MediaCollectionActivity extends BaseActivity implements
      * Loading top rated mediaobjects from the API.
      * On successful call, the result is appended to the appropriate fragment.
      *
-     * @param page pagination
-     * @see BaseMovieTvService#getTopRated(int, TmdbListener)
+     * The first page is loaded together with the pages needed to fill the screen.
+     *
+     * @param page    pagination
+     * @param visible false if the tab is not visible, and the pages are prefetched
+     * @see BaseMovieTvService#getTopRated(int, int, TmdbListener)
      */
-    private void loadTopRatedFromApi(int page) {
-        service.getTopRated(page, new TmdbListener<ArrayList<MediaObject>>() {
+    private void loadTopRatedFromApi(final int page, boolean visible) {
+        final int pages = page == 1 ? RecyclerMediaListFragment.pagesToFill(this) : 1;
+        service.getTopRated(page, pages, FetchPlan.bind(requestScope, new TmdbListener<MediaPages>() {
             @Override
-            public void onSuccess(ArrayList<MediaObject> result) {
-                topRatedTab.appendContent(result);
+            public void onSuccess(MediaPages result) {
+                if (page == 1)
+                    topRatedTab.setContent(result);
+                else
+                    topRatedTab.appendContent(result.getMediaObjects());
             }
 
             @Override
             public void onError(String result) {
                 showToast(result);
             }
-        });
+        }, visible));
     }
 
     /**
      * Loading top upcoming mediaobjects from the API.
      * On successful call, the result is appended to the appropriate fragment.
      *
-     * @param page pagination
-     * @see BaseMovieTvService#getUpcoming(int, TmdbListener)
+     * The first page is loaded together with the pages needed to fill the screen.
+     *
+     * @param page    pagination
+     * @param visible false if the tab is not visible, and the pages are prefetched
+     * @see BaseMovieTvService#getUpcoming(int, int, TmdbListener)
      */
-    private void loadUpcomingFromApi(int page) {
-        service.getUpcoming(page, new TmdbListener<ArrayList<MediaObject>>() {
+    private void loadUpcomingFromApi(final int page, boolean visible) {
+        final int pages = page == 1 ? RecyclerMediaListFragment.pagesToFill(this) : 1;
+        if (page == 1) {
+            upcomingLoading = true;
+            upcomingPrefetching = !visible;
+        }
+
+        service.getUpcoming(page, pages, FetchPlan.bind(requestScope, new TmdbListener<MediaPages>() {
             @Override
-            public void onSuccess(ArrayList<MediaObject> result) {
-                upcomingTab.appendContent(result);
+            public void onSuccess(MediaPages result) {
+                if (page != 1) {
+                    upcomingTab.appendContent(result.getMediaObjects());
+                } else if (upcomingLoading) {
+                    // Also fired for the prefetch, if the tab was opened while prefetching
+                    upcomingLoading = false;
+                    upcomingTab.setContent(result);
+                }
             }
 
             @Override
             public void onError(String result) {
+                if (page == 1 && !upcomingLoading)
+                    return;
+
+                if (page == 1)
+                    upcomingLoading = false;
                 showToast(result);
             }
-        });
+        }, visible));
+    }
+
+    /**
+     * Loading the first pages of the upcoming tab as visible, if the tab is opened while they
+     * are prefetched. The prefetch is joined, and sent at once if it is still waiting.
+     */
+    private void showUpcoming() {
+        if (upcomingLoading && upcomingPrefetching)
+            loadUpcomingFromApi(1, true);
     }
 
     /**
@@ -238,7 +367,7 @@ public class MediaCollectionActivity extends BaseActivity implements
      * On successful call, the result is appended to the appropriate fragment.
      *
      * @param page pagination
-     * @see BaseMovieTvService#getByGenre(int, Genre, TmdbListener)
+     * @see BaseMovieTvService#getByGenre(int, int, Genre, TmdbListener)
      */
     private void loadGenreMediaFromApi(final int page, Genre genre) {
         if (genre == null) {
@@ -246,22 +375,32 @@ public class MediaCollectionActivity extends BaseActivity implements
             return;
         }
 
-        // Loading
-        service.getByGenre(page, genre, new TmdbListener<ArrayList<MediaObject>>() {
+        // Loading, enough pages to fill the screen when a genre is chosen
+        final int pages = page == 1 ? RecyclerMediaListFragment.pagesToFill(this) : 1;
+        service.getByGenre(page, pages, genre, genreScope.bind(new TmdbListener<MediaPages>() {
             @Override
-            public void onSuccess(ArrayList<MediaObject> result) {
+            public void onSuccess(MediaPages result) {
                 if (page == 1) {
                     genreMediaTab.setContent(result);
                     genreTab.showChildFragment(genreMediaTab);
                 } else
-                    genreMediaTab.appendContent(result);
+                    genreMediaTab.appendContent(result.getMediaObjects());
             }
 
             @Override
             public void onError(String result) {
                 showToast(result);
             }
-        });
+        }));
+    }
+
+    /**
+     * Cancelling requests for the chosen genre as well.
+     */
+    @Override
+    protected void onDestroy() {
+        genreScope.destroy();
+        super.onDestroy();
     }
 
     /**
@@ -276,9 +415,11 @@ public class MediaCollectionActivity extends BaseActivity implements
     /**
      * Setting genres to the genre tab.
      * If no genres has been downloaded yet, the method returns.
+     *
+     * @param visible true if the genre tab is visible, else fetched as a prefetch
      */
-    private void fetchGenres() {
-        service.getAllGenres(new TmdbListener<ArrayList<Genre>>() {
+    private void fetchGenres(boolean visible) {
+        service.getAllGenres(FetchPlan.bind(requestScope, new TmdbListener<ArrayList<Genre>>() {
             @Override
             public void onSuccess(ArrayList<Genre> result) {
                 genreList = result;
@@ -288,13 +429,42 @@ public class MediaCollectionActivity extends BaseActivity implements
                     genreStrings.add(g.getGenre());
 
                 genreTab.setContent(genreStrings);
+                prefetchGenres();
             }
 
             @Override
             public void onError(String result) {
                 showToast(result);
             }
-        });
+        }, visible));
+    }
+
+    /**
+     * Prefetching the first page of the genres chosen most often.
+     * Genres not chosen before are not prefetched.
+     *
+     * @see GenreUsage
+     */
+    private void prefetchGenres() {
+        List<Integer> mostUsed = genreUsage.getMostUsed(mediaType, PREFETCHED_GENRES);
+
+        for (Genre genre : genreList) {
+            final int id = genre.getId();
+            if (!mostUsed.contains(id) || prefetchedGenres.get(id) != null)
+                continue;
+
+            service.getByGenre(1, genre, FetchPlan.bind(requestScope, new TmdbListener<ArrayList<MediaObject>>() {
+                @Override
+                public void onSuccess(ArrayList<MediaObject> result) {
+                    prefetchedGenres.put(id, result);
+                }
+
+                @Override
+                public void onError(String result) {
+                    // Loaded when chosen
+                }
+            }, false));
+        }
     }
 
     /**
@@ -337,6 +507,9 @@ public class MediaCollectionActivity extends BaseActivity implements
             @Override
             public void onTabSelected(TabLayout.Tab tab) {
                 viewPager.setCurrentItem(tab.getPosition());
+
+                if (tab.getPosition() == UPCOMING_POSITION)
+                    showUpcoming();
             }
 
 
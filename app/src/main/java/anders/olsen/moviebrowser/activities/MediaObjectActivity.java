@@ -15,6 +15,7 @@ import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.adapter.MainPagerAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerAdapter;
 import anders.olsen.moviebrowser.adapter.RecyclerMediaListAdapter;
+import anders.olsen.moviebrowser.constants.TmdbConstants;
 import anders.olsen.moviebrowser.fragment.MediaObjectInformationFragment;
 import anders.olsen.moviebrowser.fragment.RatingDialogFragment;
 import anders.olsen.moviebrowser.fragment.RecyclerMediaListFragment;
@@ -24,6 +25,7 @@ import anders.olsen.moviebrowser.listener.ListFragmentListener;
 import anders.olsen.moviebrowser.listener.MediaObjectFragmentListener;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.loader.BaseMovieTvService;
+import anders.olsen.moviebrowser.model.MediaDetails;
 import anders.olsen.moviebrowser.model.MediaObject;
 
 /**
@@ -69,6 +71,15 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
      */
     private boolean inFavoritelist;
 
+    /**
+     * YouTube id of the trailer, from the details. Null if none
+     */
+    private String trailerId;
+    /**
+     * True when the details of the current mediaobject are downloaded
+     */
+    private boolean detailsLoaded;
+
     /**
      * Stack of chosen mediaobjects, avoiding multiple activities.
      */
@@ -90,12 +101,45 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
         // Up navigation, displaying arrow back to previous activity.
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
-        if (getIntent().getParcelableExtra(BaseActivity.MEDIA_OBJECT_KEY) != null) {
-            mediaObject = getIntent().getParcelableExtra(BaseActivity.MEDIA_OBJECT_KEY);
+        String type = getIntent().getStringExtra(MEDIA_OBJECT_TYPE_KEY);
+        int id = getIntent().getIntExtra(MEDIA_OBJECT_ID_KEY, 0);
+
+        // Shown in the previous activity, unless the process has been restarted
+        mediaObject = MediaObject.find(type, id);
+
+        if (mediaObject != null) {
             mediaObjectStack.push(mediaObject);
-        }
+            loadNewMediaobject();
+        } else
+            loadMediaObjectFromApi(type, id);
+    }
 
-        loadNewMediaobject();
+    /**
+     * Downloading the mediaobject to show, when it is no longer in memory.
+     *
+     * @param type mediaobject type, movie / tv
+     * @param id   mediaobject id
+     */
+    private void loadMediaObjectFromApi(String type, int id) {
+        BaseMovieTvService service =
+                TmdbConstants.MEDIA_TYPE_MOVIE.equals(type) ? movieService : tvService;
+
+        service.getDetails(id, requestScope.bind(new TmdbListener<MediaDetails>() {
+            @Override
+            public void onSuccess(MediaDetails result) {
+                if (isDestroyed())
+                    return;
+
+                mediaObjectStack.push(result.getMediaObject());
+                loadNewMediaobject(result);
+            }
+
+            @Override
+            public void onError(String result) {
+                showToast(result);
+                finish();
+            }
+        }));
     }
 
     /**
@@ -145,88 +189,116 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
 
     /**
      * Starting a YoutubeFragment if a youtube id is available for the current mediaobject.
+     * The youtube id is part of the details, it is only downloaded if the details are not.
      *
      * @see BaseMovieTvService#getTrailerUrl(int, TmdbListener)
      * @see YoutubeFragment
      */
     @Override
     public void startTrailer() {
+        if (detailsLoaded) {
+            if (trailerId == null)
+                showToast(getString(R.string.trailer_not_found));
+            else
+                showTrailer(trailerId);
+            return;
+        }
+
         BaseMovieTvService service;
         service = (mediaObject.isMovie()) ? movieService : tvService;
 
-        service.getTrailerUrl(mediaObject.getId(), new TmdbListener<String>() {
+        service.getTrailerUrl(mediaObject.getId(), requestScope.bind(new TmdbListener<String>() {
             @Override
             public void onSuccess(String youtubeID) {
-
-                Bundle bundle = new Bundle();
-                bundle.putString(YOUTUBE_ID, youtubeID);
-
-                // Launching YoutubeFragment
-                // Replacing current frame with the YoutubeFragment.
-                YoutubeFragment fragment = new YoutubeFragment();
-                fragment.setArguments(bundle);
-                FragmentManager manager = getSupportFragmentManager();
-                manager.beginTransaction()
-                        .replace(R.id.frame, fragment)
-                        .addToBackStack(null)
-                        .commit();
+                showTrailer(youtubeID);
             }
 
             @Override
             public void onError(String result) {
                 showToast(result);
             }
-        });
+        }));
+    }
+
+    /**
+     * Launching YoutubeFragment,
+     * replacing current frame with the YoutubeFragment.
+     *
+     * @param youtubeID youtube id of the trailer
+     */
+    private void showTrailer(String youtubeID) {
+        Bundle bundle = new Bundle();
+        bundle.putString(YOUTUBE_ID, youtubeID);
+
+        YoutubeFragment fragment = new YoutubeFragment();
+        fragment.setArguments(bundle);
+        FragmentManager manager = getSupportFragmentManager();
+        manager.beginTransaction()
+                .replace(R.id.frame, fragment)
+                .addToBackStack(null)
+                .commit();
     }
 
     /**
      * Adding movie / URL_TV to the users favorite list.
-     * If successful, the color of the button will change
+     * The color of the button is changed at once, and changed back if TMDB rejects it.
      *
      * @see Saveable#addToFavoriteList(MediaObject, boolean, TmdbListener)
      * @see MediaObjectInformationFragment#alternateFavoritelistBtnColor(boolean)
      */
     @Override
     public void addFavorite() {
-        saveable.addToFavoriteList(mediaObject, !inFavoritelist,
-                new TmdbListener<String>() {
+        final boolean status = !inFavoritelist;
+        inFavoritelist = status;
+        mediaTab.alternateFavoritelistBtnColor(inFavoritelist);
+
+        saveable.addToFavoriteList(mediaObject, status,
+                requestScope.bind(new TmdbListener<String>() {
                     @Override
                     public void onSuccess(String result) {
-                        inFavoritelist = !inFavoritelist;
-                        mediaTab.alternateFavoritelistBtnColor(inFavoritelist);
                         showToast(result);
                     }
 
                     @Override
                     public void onError(String result) {
+                        if (inFavoritelist == status) {
+                            inFavoritelist = !status;
+                            mediaTab.alternateFavoritelistBtnColor(inFavoritelist);
+                        }
                         showToast(result);
                     }
-                });
+                }));
     }
 
     /**
      * Adding movie / URL_TV to the users watchlist.
-     * If successful, the color of the button will change
+     * The color of the button is changed at once, and changed back if TMDB rejects it.
      *
      * @see MediaObjectInformationFragment#alternateWatchlistBtnColor(boolean)
      * @see Saveable(MediaObject, boolean, TmdbListener)
      */
     @Override
     public void addWatchlist() {
-        saveable.addToWatchlist(mediaObject, !inWatchlist,
-                new TmdbListener<String>() {
+        final boolean status = !inWatchlist;
+        inWatchlist = status;
+        mediaTab.alternateWatchlistBtnColor(inWatchlist);
+
+        saveable.addToWatchlist(mediaObject, status,
+                requestScope.bind(new TmdbListener<String>() {
                     @Override
                     public void onSuccess(String result) {
-                        inWatchlist = !inWatchlist;
-                        mediaTab.alternateWatchlistBtnColor(inWatchlist);
                         showToast(result);
                     }
 
                     @Override
                     public void onError(String result) {
+                        if (inWatchlist == status) {
+                            inWatchlist = !status;
+                            mediaTab.alternateWatchlistBtnColor(inWatchlist);
+                        }
                         showToast(result);
                     }
-                });
+                }));
     }
 
     /**
@@ -238,7 +310,7 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
      */
     @Override
     public void onDialogPositiveClick(int rating) {
-        accountService.addRating(mediaObject, rating, new TmdbListener<String>() {
+        accountService.addRating(mediaObject, rating, requestScope.bind(new TmdbListener<String>() {
             @Override
             public void onSuccess(String result) {
                 showToast(result);
@@ -248,7 +320,7 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
             public void onError(String result) {
                 showToast(result);
             }
-        });
+        }));
     }
 
     /**
@@ -350,7 +422,7 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
         service = (mediaObject.isMovie()) ? movieService : tvService;
 
         service.getSimilar(mediaObject.getId(),
-                page, new TmdbListener<ArrayList<MediaObject>>() {
+                page, requestScope.bind(new TmdbListener<ArrayList<MediaObject>>() {
                     @Override
                     public void onSuccess(ArrayList<MediaObject> result) {
                         similarTab.appendContent(result);
@@ -360,7 +432,7 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
                     public void onError(String result) {
                         showToast(result);
                     }
-                });
+                }));
     }
 
     /**
@@ -368,7 +440,7 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
      * The saveable can be either MovieAccountService or TvAccountService.
      */
     private void fetchLists() {
-        saveable.hasInFavoriteList(mediaObject, new TmdbListener<Boolean>() {
+        saveable.hasInFavoriteList(mediaObject, requestScope.bind(new TmdbListener<Boolean>() {
             @Override
             public void onSuccess(Boolean inList) {
                 inFavoritelist = inList;
@@ -380,8 +452,8 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
             public void onError(String result) {
 
             }
-        });
-        saveable.hasInWatchlist(mediaObject, new TmdbListener<Boolean>() {
+        }));
+        saveable.hasInWatchlist(mediaObject, requestScope.bind(new TmdbListener<Boolean>() {
             @Override
             public void onSuccess(Boolean inList) {
                 inWatchlist = inList;
@@ -393,32 +465,98 @@ public class MediaObjectActivity extends BaseActivity implements ListFragmentLis
             public void onError(String result) {
 
             }
-        });
+        }));
     }
 
     /**
      * Loading information about chosen mediaobject.
      */
     private void loadNewMediaobject() {
+        loadNewMediaobject(null);
+    }
+
+    /**
+     * Loading information about chosen mediaobject.
+     * Similar mediaobjects, trailer and list states are downloaded in one request.
+     *
+     * @param details details of the mediaobject if already downloaded, else null
+     * @see BaseMovieTvService#getDetails(int, TmdbListener)
+     */
+    private void loadNewMediaobject(MediaDetails details) {
+        // Requests for the previous mediaobject are no longer needed
+        requestScope.cancel();
         this.mediaObject = mediaObjectStack.peek();
 
         similarTab = new RecyclerMediaListFragment();
         mediaTab = new MediaObjectInformationFragment();
         mediaTab.setMediaObject(mediaObject);
-        loadSimilarFromApi(1);
 
         if (mediaObject.isMovie())
             saveable = tmdb.getMovieAccountService();
         else
             saveable = tmdb.getTvAccountService();
 
+        trailerId = null;
+        detailsLoaded = false;
+        inWatchlist = false;
+        inFavoritelist = false;
+
+        if (details != null)
+            showDetails(details);
+        else
+            loadDetails();
+
+        setUpTabLayout();
+    }
+
+    /**
+     * Downloading the details of the current mediaobject.
+     * If the download fails, similar mediaobjects and lists are downloaded separately.
+     */
+    private void loadDetails() {
+        final MediaObject requested = mediaObject;
+        BaseMovieTvService service = (requested.isMovie()) ? movieService : tvService;
+
+        service.getDetails(requested.getId(), requestScope.bind(new TmdbListener<MediaDetails>() {
+            @Override
+            public void onSuccess(MediaDetails result) {
+                if (requested.equals(mediaObject))
+                    showDetails(result);
+            }
+
+            @Override
+            public void onError(String result) {
+                if (!requested.equals(mediaObject))
+                    return;
+
+                loadSimilarFromApi(1);
+                if (accountService.isLoggedIn())
+                    fetchLists();
+            }
+        }));
+    }
+
+    /**
+     * Handing the parts of the details to the tabs.
+     *
+     * @param details details of the current mediaobject
+     */
+    private void showDetails(MediaDetails details) {
+        trailerId = details.getTrailerId();
+        detailsLoaded = true;
+        similarTab.appendContent(details.getSimilar());
+
         // Changing color of watchlist and favorite button.
         // Green indicating that it is saved in list.
-        if (accountService.isLoggedIn()) {
+        if (details.hasAccountStates()) {
+            inFavoritelist = details.isFavorite();
+            inWatchlist = details.isInWatchlist();
+            if (inFavoritelist)
+                mediaTab.alternateFavoritelistBtnColor(true);
+            if (inWatchlist)
+                mediaTab.alternateWatchlistBtnColor(true);
+        } else if (accountService.isLoggedIn())
             fetchLists();
-        }
-
-        setUpTabLayout();
     }
 
 }
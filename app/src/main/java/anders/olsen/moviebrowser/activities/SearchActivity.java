@@ -5,14 +5,19 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.SearchView;
 
 import java.util.ArrayList;
 
 import anders.olsen.moviebrowser.adapter.RecyclerAdapter;
+import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.fragment.RecyclerMediaListFragment;
+import anders.olsen.moviebrowser.listener.CachedTmdbListener;
 import anders.olsen.moviebrowser.listener.ListFragmentListener;
 import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.loader.IncrementalSearch;
 import anders.olsen.moviebrowser.loader.SearchService;
 import anders.olsen.moviebrowser.model.MediaObject;
 
@@ -20,6 +25,9 @@ import anders.olsen.moviebrowser.model.MediaObject;
  * Activity showing search results, when user searches for movie / tv through Options Menu.
  * <p>
  * The activity contains a RecyclerMediaListFragment with MediaObjects.
+ * <p>
+ * While the user types in the SearchView, the results are updated with an
+ * {@link IncrementalSearch}.
  *
  * @author Anders Engen Olsen
  */
@@ -36,6 +44,16 @@ public class SearchActivity extends BaseActivity
      */
     private RecyclerMediaListFragment searchResults;
 
+    /**
+     * The fragment added to the layout, null if none
+     */
+    private RecyclerMediaListFragment shownResults;
+
+    /**
+     * Search updated while the user types
+     */
+    private IncrementalSearch incrementalSearch;
+
     /**
      * The search query
      */
@@ -55,10 +73,71 @@ public class SearchActivity extends BaseActivity
 
         searchService = tmdb.getSearchService();
         searchResults = new RecyclerMediaListFragment();
+        incrementalSearch = searchService.newIncrementalSearch();
 
         handleIntent(getIntent());
     }
 
+    /**
+     * Updating the results while the user types in the SearchView.
+     * Submitting the query is handled by {@link #onNewIntent(Intent)}.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        super.onCreateOptionsMenu(menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.nav_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String text) {
+                incrementalSearch.cancel();
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String text) {
+                if (text.trim().isEmpty()) {
+                    // Search for the removed text is not sent
+                    incrementalSearch.cancel();
+                    return false;
+                }
+
+                // Pages of the previous query are no longer needed
+                requestScope.cancel();
+                query = text;
+                setTitle(query);
+                incrementalSearch.setQuery(text, new CachedTmdbListener<ArrayList<MediaObject>>() {
+                    @Override
+                    public void onCached(ArrayList<MediaObject> result) {
+                        showResults(result);
+                    }
+
+                    @Override
+                    public void onSuccess(ArrayList<MediaObject> result) {
+                        showResults(result);
+                    }
+
+                    @Override
+                    public void onError(String result) {
+                        // The submitted query shows the error
+                    }
+                });
+                return true;
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Cancelling the search for the typed query.
+     */
+    @Override
+    protected void onDestroy() {
+        incrementalSearch.cancel();
+        super.onDestroy();
+    }
+
     /**
      * This activity is launched with mode singleTop.
      * Avoiding new instance each time a user makes a search.
@@ -69,6 +148,9 @@ public class SearchActivity extends BaseActivity
     @Override
     protected void onNewIntent(Intent intent) {
         super.onNewIntent(intent);
+        // Results for the previous query are no longer needed
+        incrementalSearch.cancel();
+        requestScope.cancel();
         searchService = tmdb.getSearchService();
         searchResults = new RecyclerMediaListFragment();
         handleIntent(intent);
@@ -124,13 +206,12 @@ public class SearchActivity extends BaseActivity
      */
     private void loadSearchResultsFromApi(String query, final int page) {
         searchService.searchMoviesAndTV(query, page,
-                new TmdbListener<ArrayList<MediaObject>>() {
+                requestScope.bind(new TmdbListener<ArrayList<MediaObject>>() {
                     @Override
                     public void onSuccess(ArrayList<MediaObject> result) {
-                        if (page == 1) {
-                            searchResults.setContent(result);
-                            addFragmentToLayout(searchResults, "SearchTag");
-                        } else
+                        if (page == 1)
+                            showResults(result);
+                        else
                             searchResults.appendContent(result);
                     }
 
@@ -138,7 +219,21 @@ public class SearchActivity extends BaseActivity
                     public void onError(String result) {
                         showToast(result);
                     }
-                });
+                }));
+    }
+
+    /**
+     * Showing the first page of results, adding the fragment to the layout if needed.
+     *
+     * @param result first page of results
+     */
+    private void showResults(ArrayList<MediaObject> result) {
+        searchResults.setContent(result);
+
+        if (shownResults != searchResults) {
+            addFragmentToLayout(searchResults, "SearchTag");
+            shownResults = searchResults;
+        }
     }
 
     /**
@@ -1,22 +1,58 @@
 package anders.olsen.moviebrowser.adapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 
 /**
  * Generic, abstract superclass for different Adapters used for RecyclerViews.
+ * <p>
+ * The adapter keeps its own copy of the content, and notifies the RecyclerView about the
+ * items which changed, so only those are bound again:
+ * <ul>
+ * <li>Content which starts with the current content is an append, and is notified as a
+ * range insert</li>
+ * <li>Other content is compared to the current content with {@link DiffUtil}, on a
+ * background thread. The result is dispatched on the main thread, unless newer content
+ * has been set in the meantime</li>
+ * </ul>
+ * Subclasses decide when two elements are the same item, and when they look the same.
+ * Must be used from the main thread.
  *
  * @author Anders Engen Olsen
  */
 public abstract class RecyclerAdapter<AnyType> extends
         RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
+    /**
+     * Computing diffs, shared by all adapters
+     */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+    /**
+     * Dispatching diffs on the main thread
+     */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
     Context context;
     protected List<AnyType> content;
 
+    /**
+     * Content waiting for a diff against the current content, null if none
+     */
+    private List<AnyType> pendingContent;
+    /**
+     * Increased for every new content, diffs for older content are discarded
+     */
+    private int generation;
+
     /**
      * Constructor.
      *
@@ -25,7 +61,7 @@ public abstract class RecyclerAdapter<AnyType> extends
      */
     RecyclerAdapter(Context context, List<AnyType> content) {
         this.context = context;
-        this.content = content;
+        this.content = (content == null) ? new ArrayList<AnyType>() : new ArrayList<>(content);
     }
 
     /**
@@ -45,9 +81,151 @@ public abstract class RecyclerAdapter<AnyType> extends
     }
 
     /**
-     * Setting content in adapter
+     * Setting content in adapter, and notifying the RecyclerView about the changed items.
+     * The list is copied, and may be changed by the caller afterwards.
+     *
+     * @param newContent content to show
      */
-    public void setContent(List<AnyType> content) {
-        this.content = content;
+    public void setContent(List<AnyType> newContent) {
+        final List<AnyType> target = (newContent == null)
+                ? new ArrayList<AnyType>() : new ArrayList<>(newContent);
+        final int diffGeneration = ++generation;
+        pendingContent = null;
+
+        // Nothing to compare with, or nothing left
+        if (content.isEmpty() || target.isEmpty()) {
+            int removed = content.size();
+            content = target;
+            if (removed > 0)
+                notifyItemRangeRemoved(0, removed);
+            if (!target.isEmpty())
+                notifyItemRangeInserted(0, target.size());
+            return;
+        }
+
+        if (startsWithContent(target)) {
+            int start = content.size();
+            content = target;
+            if (target.size() > start)
+                notifyItemRangeInserted(start, target.size() - start);
+            return;
+        }
+
+        pendingContent = target;
+        final List<AnyType> oldContent = content;
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result =
+                        DiffUtil.calculateDiff(new ContentDiff(oldContent, target));
+
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (diffGeneration != generation)
+                            return;
+
+                        pendingContent = null;
+                        content = target;
+                        result.dispatchUpdatesTo(RecyclerAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Appending items to the content, notified as a range insert.
+     *
+     * @param items items to append
+     */
+    public void appendContent(List<AnyType> items) {
+        if (items == null || items.isEmpty())
+            return;
+
+        // Appending to the content waiting for a diff, which is then computed again
+        if (pendingContent != null) {
+            List<AnyType> target = new ArrayList<>(pendingContent);
+            target.addAll(items);
+            setContent(target);
+            return;
+        }
+
+        int start = content.size();
+        content.addAll(items);
+        notifyItemRangeInserted(start, items.size());
+    }
+
+    /**
+     * @param a element
+     * @param b element
+     * @return true if a and b are the same item, e.g. same id. Default equals
+     */
+    protected boolean isSameItem(AnyType a, AnyType b) {
+        return a.equals(b);
+    }
+
+    /**
+     * Only called when isSameItem is true.
+     *
+     * @param a element
+     * @param b element
+     * @return true if a and b are shown the same way. Default equals
+     */
+    protected boolean isSameContent(AnyType a, AnyType b) {
+        return a.equals(b);
+    }
+
+    /**
+     * @param target new content
+     * @return true if target starts with the current content
+     */
+    private boolean startsWithContent(List<AnyType> target) {
+        if (target.size() < content.size())
+            return false;
+
+        for (int i = 0; i < content.size(); i++) {
+            AnyType a = content.get(i);
+            AnyType b = target.get(i);
+            if (a != b && !(isSameItem(a, b) && isSameContent(a, b)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Comparing the current content with new content.
+     */
+    private class ContentDiff extends DiffUtil.Callback {
+
+        private final List<AnyType> oldContent;
+        private final List<AnyType> newContent;
+
+        private ContentDiff(List<AnyType> oldContent, List<AnyType> newContent) {
+            this.oldContent = oldContent;
+            this.newContent = newContent;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldContent.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newContent.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return isSameItem(oldContent.get(oldPosition), newContent.get(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return isSameContent(oldContent.get(oldPosition), newContent.get(newPosition));
+        }
     }
 }
@@ -2,16 +2,16 @@ package anders.olsen.moviebrowser.adapter;
 
 import android.content.Context;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
-import com.squareup.picasso.Picasso;
-
 import java.util.List;
 
 import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.image.ImageLoader;
 import anders.olsen.moviebrowser.model.MediaObject;
 
 
@@ -25,6 +25,11 @@ import anders.olsen.moviebrowser.model.MediaObject;
  */
 public class RecyclerImageAdapter extends RecyclerAdapter<MediaObject> {
 
+    /**
+     * Fired when a poster is shown, null if not needed
+     */
+    private ImageLoader.PosterCallback posterCallback;
+
     /**
      * Constructor.
      *
@@ -35,6 +40,16 @@ public class RecyclerImageAdapter extends RecyclerAdapter<MediaObject> {
         super(context, content);
     }
 
+    /**
+     * Setting a callback fired when a poster is shown, e.g. to measure the startup time.
+     * Posters are loaded without a callback when it is null.
+     *
+     * @param posterCallback callback, may be null
+     */
+    public void setPosterCallback(ImageLoader.PosterCallback posterCallback) {
+        this.posterCallback = posterCallback;
+    }
+
     /**
      * Initiating ViewHolder with layout.
      *
@@ -63,10 +78,27 @@ public class RecyclerImageAdapter extends RecyclerAdapter<MediaObject> {
 
         RecyclerImageViewHolder imageViewHolder = (RecyclerImageViewHolder) holder;
 
-        Picasso.with(context).load(mediaObject.getImagePath())
-                .error(R.drawable.ic_movie_black)
-                .placeholder(R.drawable.ic_movie_black)
-                .into(imageViewHolder.poster);
+        ImageLoader imageLoader = ImageLoader.getInstance(context);
+        if (posterCallback != null)
+            imageLoader.loadPoster(mediaObject.getImagePath(), imageViewHolder.poster, posterCallback);
+        else
+            imageLoader.loadPoster(mediaObject.getImagePath(), imageViewHolder.poster);
+    }
+
+    /**
+     * Same item if same id and type.
+     */
+    @Override
+    protected boolean isSameItem(MediaObject a, MediaObject b) {
+        return a.getId() == b.getId() && TextUtils.equals(a.getType(), b.getType());
+    }
+
+    /**
+     * Only the poster is shown.
+     */
+    @Override
+    protected boolean isSameContent(MediaObject a, MediaObject b) {
+        return TextUtils.equals(a.getImagePath(), b.getImagePath());
     }
 
     /**
@@ -2,23 +2,27 @@ package anders.olsen.moviebrowser.adapter;
 
 import android.content.Context;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.image.ImageLoader;
+import anders.olsen.moviebrowser.model.AccountState;
 import anders.olsen.moviebrowser.model.MediaObject;
 
 
 /**
  * Custom adapter for RecyclerView, with inner class for the ViewHolder in the Adapter.
  * Used whenever a list of mediaobjects is shown.
+ * When logged in, the rows show whether the mediaobject is in the users lists, or rated.
  *
  * @author Anders Engen Olsen
  * @see RecyclerAdapter
@@ -27,6 +31,11 @@ import anders.olsen.moviebrowser.model.MediaObject;
 
 public class RecyclerMediaListAdapter extends RecyclerAdapter<MediaObject> {
 
+    /**
+     * The users account states, by mediaobject
+     */
+    private final Map<MediaObject, AccountState> accountStates = new HashMap<>();
+
     /**
      * Constructor.
      *
@@ -66,10 +75,69 @@ public class RecyclerMediaListAdapter extends RecyclerAdapter<MediaObject> {
         recyclerListHolder.title.setText(mediaObject.getTitle());
         recyclerListHolder.genre.setText(mediaObject.getGenre());
 
-        Picasso.with(context).load(mediaObject.getImagePath())
-                .error(R.drawable.ic_movie_black)
-                .placeholder(R.drawable.ic_movie_black)
-                .into(recyclerListHolder.poster);
+        ImageLoader.getInstance(context).loadPoster(mediaObject.getImagePath(), recyclerListHolder.poster);
+
+        String state = describe(accountStates.get(mediaObject));
+        recyclerListHolder.accountState.setText(state);
+        recyclerListHolder.accountState.setVisibility(state.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Adding account states, and rebinding the rows they belong to.
+     *
+     * @param states account states by mediaobject
+     */
+    public void setAccountStates(Map<MediaObject, AccountState> states) {
+        accountStates.putAll(states);
+
+        for (int position = 0; position < content.size(); position++)
+            if (states.containsKey(content.get(position)))
+                notifyItemChanged(position);
+    }
+
+    /**
+     * @param state account state, may be null
+     * @return e.g. "Favorite · Rated 8.0", empty if not in a list and not rated
+     */
+    private String describe(AccountState state) {
+        if (state == null)
+            return "";
+
+        StringBuilder builder = new StringBuilder();
+        if (state.isFavorite())
+            append(builder, context.getString(R.string.state_favorite));
+        if (state.isInWatchlist())
+            append(builder, context.getString(R.string.state_watchlist));
+        if (state.isRated())
+            append(builder, context.getString(R.string.state_rated, state.getRating()));
+        return builder.toString();
+    }
+
+    /**
+     * Appending text, after a separator if not the first.
+     */
+    private void append(StringBuilder builder, String text) {
+        if (builder.length() > 0)
+            builder.append(context.getString(R.string.state_separator));
+        builder.append(text);
+    }
+
+    /**
+     * Same item if same id and type.
+     */
+    @Override
+    protected boolean isSameItem(MediaObject a, MediaObject b) {
+        return a.getId() == b.getId() && TextUtils.equals(a.getType(), b.getType());
+    }
+
+    /**
+     * Title, genre and poster are shown.
+     */
+    @Override
+    protected boolean isSameContent(MediaObject a, MediaObject b) {
+        return TextUtils.equals(a.getTitle(), b.getTitle())
+                && TextUtils.equals(a.getGenre(), b.getGenre())
+                && TextUtils.equals(a.getImagePath(), b.getImagePath());
     }
 
     /**
@@ -80,6 +148,7 @@ public class RecyclerMediaListAdapter extends RecyclerAdapter<MediaObject> {
         private ImageView poster;
         private TextView title;
         private TextView genre;
+        private TextView accountState;
 
         /**
          * @param view Root
@@ -90,6 +159,7 @@ public class RecyclerMediaListAdapter extends RecyclerAdapter<MediaObject> {
             poster = view.findViewById(R.id.poster);
             title = view.findViewById(R.id.title);
             genre = view.findViewById(R.id.genre);
+            accountState = view.findViewById(R.id.account_state);
         }
     }
 }
@@ -58,6 +58,42 @@ public class JsonConstants {
      * ID for genres, array
      */
     public static final String GENRE_IDS = "genre_ids";
+    /**
+     * Videos appended to details, object with results
+     */
+    public static final String VIDEOS = "videos";
+    /**
+     * Similar mediaobjects appended to details, a page
+     */
+    public static final String SIMILAR = "similar";
+    /**
+     * The users account states appended to details
+     */
+    public static final String ACCOUNT_STATES = "account_states";
+    /**
+     * In favorite list, account states
+     */
+    public static final String FAVORITE = "favorite";
+    /**
+     * In watchlist, account states
+     */
+    public static final String WATCHLIST = "watchlist";
+    /**
+     * Rating by the user, account states. False if not rated, else object with value
+     */
+    public static final String RATED = "rated";
+    /**
+     * Video site, e.g. YouTube
+     */
+    public static final String SITE = "site";
+    /**
+     * Video type, e.g. Trailer
+     */
+    public static final String TYPE = "type";
+    /**
+     * Video key, the YouTube id
+     */
+    public static final String KEY = "key";
     /**
      * Status code parameter in JSON
      */
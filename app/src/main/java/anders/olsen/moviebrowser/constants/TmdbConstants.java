@@ -98,6 +98,14 @@ public class TmdbConstants {
      * Shared preferences key for session id
      */
     public static final String SHARED_PREF_ID = "shared_pref_id";
+    /**
+     * Shared preferences for changes to lists and ratings not yet posted
+     */
+    public static final String SHARED_PREF_MUTATIONS = "shared_pref_mutations";
+    /**
+     * Shared preferences for the number of times each genre is chosen
+     */
+    public static final String SHARED_PREF_GENRE_USAGE = "shared_pref_genre_usage";
     /**
      * Base URL for authentication
      */
@@ -148,4 +156,20 @@ public class TmdbConstants {
      * Similar media objects
      */
     public static final String SIMILAR = "similar";
+    /**
+     * Parameter for parts appended to details
+     */
+    public static final String PARAM_APPEND_TO_RESPONSE = "append_to_response";
+    /**
+     * Parts appended to details: trailers and similar
+     */
+    public static final String APPEND_DETAILS = "videos,similar";
+    /**
+     * Part appended to details when logged in: favorite / watchlist
+     */
+    public static final String APPEND_ACCOUNT_STATES = "account_states";
+    /**
+     * URL account states of a mediaobject: favorite / watchlist / rated
+     */
+    public static final String URL_ACCOUNT_STATES = "account_states";
 }
@@ -0,0 +1,91 @@
+package anders.olsen.moviebrowser.database;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_GENRE_USAGE;
+
+/**
+ * Number of times the user has chosen each genre, stored in SharedPrefs on the device.
+ * <p>
+ * Used to prefetch the genres the user is most likely to choose. Movie and tv genres are
+ * counted apart, the key of a genre is the type and the genre id, e.g. "movie_28".
+ * Never sent anywhere.
+ *
+ * @author Anders Engen Olsen
+ * @see anders.olsen.moviebrowser.activities.MediaCollectionActivity
+ */
+public class GenreUsage {
+
+    /**
+     * SharedPrefs with a count per genre
+     */
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor.
+     *
+     * @param context context
+     */
+    public GenreUsage(Context context) {
+        prefs = context.getApplicationContext()
+                .getSharedPreferences(SHARED_PREF_GENRE_USAGE, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Counting a genre chosen by the user.
+     *
+     * @param type    mediaobject type, movie / tv
+     * @param genreId genre id
+     */
+    public void record(String type, int genreId) {
+        String key = key(type, genreId);
+        prefs.edit().putInt(key, prefs.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * @param type  mediaobject type, movie / tv
+     * @param count max number of genres
+     * @return ids of the genres chosen most times, most chosen first
+     */
+    public List<Integer> getMostUsed(String type, int count) {
+        String prefix = type + "_";
+        List<Map.Entry<String, ?>> entries = new ArrayList<>();
+
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof Integer)
+                entries.add(entry);
+        }
+
+        Collections.sort(entries, new Comparator<Map.Entry<String, ?>>() {
+            @Override
+            public int compare(Map.Entry<String, ?> a, Map.Entry<String, ?> b) {
+                return Integer.compare((Integer) b.getValue(), (Integer) a.getValue());
+            }
+        });
+
+        List<Integer> ids = new ArrayList<>(Math.min(count, entries.size()));
+        for (Map.Entry<String, ?> entry : entries) {
+            if (ids.size() == count)
+                break;
+
+            try {
+                ids.add(Integer.parseInt(entry.getKey().substring(prefix.length())));
+            } catch (NumberFormatException err) {
+                // Not a genre key
+            }
+        }
+
+        return ids;
+    }
+
+    private static String key(String type, int genreId) {
+        return type + "_" + genreId;
+    }
+}
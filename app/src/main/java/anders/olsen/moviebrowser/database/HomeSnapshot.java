@@ -0,0 +1,269 @@
+package anders.olsen.moviebrowser.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.model.MediaObject;
+
+/**
+ * Snapshot of the popular rows last shown in MainActivity, stored in a small binary file.
+ * <p>
+ * On a cold start the snapshot is read before the first frame, so the rows are shown at once,
+ * and replaced when the fresh pages are downloaded. The file holds at most {@link #MAX_ITEMS}
+ * mediaobjects per row, a few kB, so it is read with one buffered stream. Opening the database
+ * or memory-mapping the file would cost more than reading it.
+ * <p>
+ * Snapshots older than {@link #MAX_AGE}, from another {@link #VERSION}, or which can not be
+ * read, are ignored. The file is written on a background thread, to a temp file which replaces
+ * the snapshot, so a snapshot is never half written.
+ *
+ * @author Anders Engen Olsen
+ * @see anders.olsen.moviebrowser.activities.MainActivity
+ */
+public class HomeSnapshot {
+
+    private final static String LOG_TAG = HomeSnapshot.class.getSimpleName();
+
+    /**
+     * File in the app files dir
+     */
+    private static final String FILE_NAME = "home_snapshot.bin";
+    /**
+     * Increased when the format is changed
+     */
+    private static final int VERSION = 1;
+    /**
+     * Max number of mediaobjects stored per row, one page
+     */
+    public static final int MAX_ITEMS = 20;
+    /**
+     * Max age of a snapshot which is shown
+     */
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+    /**
+     * Buffer size when reading and writing
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /**
+     * Max number of genres of a mediaobject, more means the file is corrupt
+     */
+    private static final int MAX_GENRES = 64;
+
+    /**
+     * Background thread for writing. One thread, so snapshots are written in order.
+     */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final ArrayList<MediaObject> movies;
+    private final ArrayList<MediaObject> tv;
+
+    /**
+     * Constructor.
+     */
+    private HomeSnapshot(ArrayList<MediaObject> movies, ArrayList<MediaObject> tv) {
+        this.movies = movies;
+        this.tv = tv;
+    }
+
+    /**
+     * Reading the snapshot. Disk IO on the calling thread, but the file is small,
+     * and is read on the main thread before the first frame.
+     *
+     * @param context context
+     * @return snapshot, null if none is stored, or it is too old or can not be read
+     */
+    public static HomeSnapshot read(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_SIZE));
+
+            if (in.readInt() != VERSION)
+                return null;
+            if (System.currentTimeMillis() - in.readLong() > MAX_AGE)
+                return null;
+
+            ArrayList<MediaObject> movies = readRow(in);
+            ArrayList<MediaObject> tv = readRow(in);
+            return new HomeSnapshot(movies, tv);
+        } catch (FileNotFoundException err) {
+            return null;
+        } catch (IOException err) {
+            Log.e(LOG_TAG, "Could not read snapshot", err);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Storing the rows on a background thread, replacing the snapshot.
+     * Only the first {@link #MAX_ITEMS} mediaobjects of each row are stored.
+     *
+     * @param context context
+     * @param movies  popular movies, in order
+     * @param tv      popular tv shows, in order
+     */
+    public static void save(Context context, List<MediaObject> movies, List<MediaObject> tv) {
+        final File dir = context.getFilesDir();
+        final ArrayList<MediaObject> movieRow = firstItems(movies);
+        final ArrayList<MediaObject> tvRow = firstItems(tv);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(dir, movieRow, tvRow);
+            }
+        });
+    }
+
+    /**
+     * @return popular movies, in order
+     */
+    public ArrayList<MediaObject> getMovies() {
+        return movies;
+    }
+
+    /**
+     * @return popular tv shows, in order
+     */
+    public ArrayList<MediaObject> getTv() {
+        return tv;
+    }
+
+    /**
+     * @param row row shown
+     * @return the first {@link #MAX_ITEMS} mediaobjects with a type
+     */
+    private static ArrayList<MediaObject> firstItems(List<MediaObject> row) {
+        ArrayList<MediaObject> items = new ArrayList<>(MAX_ITEMS);
+        for (MediaObject mo : row) {
+            if (items.size() == MAX_ITEMS)
+                break;
+            if (mo.getType() != null)
+                items.add(mo);
+        }
+        return items;
+    }
+
+    /**
+     * Writing the snapshot to a temp file, which replaces the snapshot.
+     */
+    private static void write(File dir, List<MediaObject> movies, List<MediaObject> tv) {
+        File temp = new File(dir, FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), BUFFER_SIZE));
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            writeRow(out, movies);
+            writeRow(out, tv);
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(new File(dir, FILE_NAME)))
+                Log.e(LOG_TAG, "Could not replace snapshot");
+        } catch (IOException err) {
+            Log.e(LOG_TAG, "Could not write snapshot", err);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Row: count, then each mediaobject.
+     */
+    private static void writeRow(DataOutputStream out, List<MediaObject> row) throws IOException {
+        out.writeInt(row.size());
+
+        for (MediaObject mo : row) {
+            out.writeUTF(mo.getType());
+            out.writeInt(mo.getId());
+            writeNullable(out, mo.getTitle());
+            out.writeInt(mo.getReleaseDay());
+            int[] genreIds = mo.getGenreIds();
+            out.writeInt(genreIds.length);
+            for (int genreId : genreIds)
+                out.writeInt(genreId);
+            out.writeFloat(mo.getRatingValue());
+            writeNullable(out, mo.getLanguage());
+            writeNullable(out, mo.getHandling());
+            writeNullable(out, mo.getImagePath());
+        }
+    }
+
+    /**
+     * @see #writeRow(DataOutputStream, List)
+     */
+    private static ArrayList<MediaObject> readRow(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ITEMS)
+            throw new IOException("Invalid row size " + count);
+
+        ArrayList<MediaObject> row = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String type = in.readUTF();
+            MediaObject.MediaObjectBuilder builder = new MediaObject.MediaObjectBuilder(in.readInt())
+                    .type(type)
+                    .title(readNullable(in))
+                    .releaseDay(in.readInt());
+
+            int genreCount = in.readInt();
+            if (genreCount < 0 || genreCount > MAX_GENRES)
+                throw new IOException("Invalid genre count " + genreCount);
+            int[] genreIds = new int[genreCount];
+            for (int g = 0; g < genreCount; g++)
+                genreIds[g] = in.readInt();
+
+            row.add(builder.genreIds(genreIds)
+                    .rating(in.readFloat())
+                    .language(readNullable(in))
+                    .handling(readNullable(in))
+                    .imagePath(readNullable(in))
+                    .build());
+        }
+
+        return row;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        } catch (IOException err) {
+            // Nothing to do
+        }
+    }
+}
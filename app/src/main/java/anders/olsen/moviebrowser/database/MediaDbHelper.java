@@ -0,0 +1,139 @@
+package anders.olsen.moviebrowser.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * SQLite database with pages of mediaobjects downloaded from TMDB.
+ * <p>
+ * Tables:
+ * <ul>
+ * <li>{@link #TABLE_PAGES}: one row per downloaded page, keyed by endpoint and page number</li>
+ * <li>{@link #TABLE_PAGE_ITEMS}: the mediaobjects on a page, in order</li>
+ * <li>{@link #TABLE_MEDIA}: one row per mediaobject, keyed by type and id,
+ * shared by all pages it is on</li>
+ * </ul>
+ * The database only contains data which can be downloaded again. When the schema version is
+ * changed, the tables are dropped and created with the new schema.
+ *
+ * @author Anders Engen Olsen
+ * @see MediaObjectStore
+ */
+class MediaDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Database file
+     */
+    private static final String DATABASE_NAME = "media.db";
+    /**
+     * Schema version, increased whenever a table is changed.
+     * 2: image_path is the TMDB poster path, not a complete url
+     * 3: release_date is an epoch day, rating a real, and genres are genre ids
+     * 4: the users own lists are no longer stored, and endpoints have no session id
+     */
+    private static final int DATABASE_VERSION = 4;
+
+    static final String TABLE_PAGES = "pages";
+    static final String TABLE_PAGE_ITEMS = "page_items";
+    static final String TABLE_MEDIA = "media";
+
+    static final String COLUMN_ENDPOINT = "endpoint";
+    static final String COLUMN_PAGE = "page";
+    static final String COLUMN_FETCHED_AT = "fetched_at";
+    static final String COLUMN_POSITION = "position";
+    static final String COLUMN_TYPE = "type";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_TITLE = "title";
+    static final String COLUMN_RELEASE_DATE = "release_date";
+    static final String COLUMN_GENRES = "genres";
+    static final String COLUMN_RATING = "rating";
+    static final String COLUMN_LANGUAGE = "language";
+    static final String COLUMN_HANDLING = "handling";
+    static final String COLUMN_IMAGE_PATH = "image_path";
+
+    private static final String CREATE_PAGES = "CREATE TABLE " + TABLE_PAGES + " ("
+            + COLUMN_ENDPOINT + " TEXT NOT NULL, "
+            + COLUMN_PAGE + " INTEGER NOT NULL, "
+            + COLUMN_FETCHED_AT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_ENDPOINT + ", " + COLUMN_PAGE + "))";
+
+    private static final String CREATE_PAGE_ITEMS = "CREATE TABLE " + TABLE_PAGE_ITEMS + " ("
+            + COLUMN_ENDPOINT + " TEXT NOT NULL, "
+            + COLUMN_PAGE + " INTEGER NOT NULL, "
+            + COLUMN_POSITION + " INTEGER NOT NULL, "
+            + COLUMN_TYPE + " TEXT NOT NULL, "
+            + COLUMN_ID + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_ENDPOINT + ", " + COLUMN_PAGE + ", " + COLUMN_POSITION
+            + "))";
+
+    private static final String CREATE_MEDIA = "CREATE TABLE " + TABLE_MEDIA + " ("
+            + COLUMN_TYPE + " TEXT NOT NULL, "
+            + COLUMN_ID + " INTEGER NOT NULL, "
+            + COLUMN_TITLE + " TEXT, "
+            + COLUMN_RELEASE_DATE + " INTEGER, "
+            + COLUMN_GENRES + " TEXT, "
+            + COLUMN_RATING + " REAL, "
+            + COLUMN_LANGUAGE + " TEXT, "
+            + COLUMN_HANDLING + " TEXT, "
+            + COLUMN_IMAGE_PATH + " TEXT, "
+            + "PRIMARY KEY (" + COLUMN_TYPE + ", " + COLUMN_ID + "))";
+
+    /**
+     * Finding the oldest pages, when the retention policy is applied
+     */
+    private static final String INDEX_PAGES_FETCHED_AT = "CREATE INDEX pages_fetched_at ON "
+            + TABLE_PAGES + " (" + COLUMN_FETCHED_AT + ")";
+    /**
+     * Finding mediaobjects which are no longer on any page
+     */
+    private static final String INDEX_PAGE_ITEMS_MEDIA = "CREATE INDEX page_items_media ON "
+            + TABLE_PAGE_ITEMS + " (" + COLUMN_TYPE + ", " + COLUMN_ID + ")";
+
+    /**
+     * Constructor.
+     *
+     * @param context context
+     */
+    MediaDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_PAGES);
+        db.execSQL(CREATE_PAGE_ITEMS);
+        db.execSQL(CREATE_MEDIA);
+        db.execSQL(INDEX_PAGES_FETCHED_AT);
+        db.execSQL(INDEX_PAGE_ITEMS_MEDIA);
+    }
+
+    /**
+     * The database is a cache, the tables are created again with the new schema.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        dropTables(db);
+        onCreate(db);
+    }
+
+    /**
+     * The database is a cache, the tables are created again with the old schema.
+     */
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        dropTables(db);
+        onCreate(db);
+    }
+
+    /**
+     * Dropping all tables, indexes are dropped with them.
+     *
+     * @param db database
+     */
+    private void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PAGE_ITEMS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MEDIA);
+    }
+}
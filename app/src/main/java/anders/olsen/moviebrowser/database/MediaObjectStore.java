@@ -0,0 +1,268 @@
+package anders.olsen.moviebrowser.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.util.EpochDay;
+
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_ENDPOINT;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_FETCHED_AT;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_GENRES;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_HANDLING;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_ID;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_IMAGE_PATH;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_LANGUAGE;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_PAGE;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_POSITION;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_RATING;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_RELEASE_DATE;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_TITLE;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.COLUMN_TYPE;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.TABLE_MEDIA;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.TABLE_PAGES;
+import static anders.olsen.moviebrowser.database.MediaDbHelper.TABLE_PAGE_ITEMS;
+
+/**
+ * Storing and reading pages of mediaobjects in the {@link MediaDbHelper} database.
+ * <p>
+ * A page is identified by an endpoint, e.g. the url without api key, session id and page number,
+ * and a page number. All writes to a page are done in one transaction.
+ * <p>
+ * All methods do disk IO, and must not be called on the main thread.
+ *
+ * @author Anders Engen Olsen
+ * @see MediaDbHelper
+ */
+public class MediaObjectStore {
+
+    /**
+     * Separator between genre ids in the genre column
+     */
+    private static final String GENRE_SEPARATOR = ",";
+    /**
+     * Splitting the genre column
+     */
+    private static final Pattern GENRE_SPLITTER = Pattern.compile(GENRE_SEPARATOR);
+
+    private static final String INSERT_MEDIA = "INSERT OR REPLACE INTO " + TABLE_MEDIA + " ("
+            + COLUMN_TYPE + ", " + COLUMN_ID + ", " + COLUMN_TITLE + ", " + COLUMN_RELEASE_DATE
+            + ", " + COLUMN_GENRES + ", " + COLUMN_RATING + ", " + COLUMN_LANGUAGE + ", "
+            + COLUMN_HANDLING + ", " + COLUMN_IMAGE_PATH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PAGE_ITEM = "INSERT INTO " + TABLE_PAGE_ITEMS + " ("
+            + COLUMN_ENDPOINT + ", " + COLUMN_PAGE + ", " + COLUMN_POSITION + ", "
+            + COLUMN_TYPE + ", " + COLUMN_ID + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String QUERY_PAGE = "SELECT m." + COLUMN_TYPE + ", m." + COLUMN_ID
+            + ", m." + COLUMN_TITLE + ", m." + COLUMN_RELEASE_DATE + ", m." + COLUMN_GENRES
+            + ", m." + COLUMN_RATING + ", m." + COLUMN_LANGUAGE + ", m." + COLUMN_HANDLING
+            + ", m." + COLUMN_IMAGE_PATH
+            + " FROM " + TABLE_PAGE_ITEMS + " p JOIN " + TABLE_MEDIA + " m"
+            + " ON m." + COLUMN_TYPE + " = p." + COLUMN_TYPE + " AND m." + COLUMN_ID + " = p." + COLUMN_ID
+            + " WHERE p." + COLUMN_ENDPOINT + " = ? AND p." + COLUMN_PAGE + " = ?"
+            + " ORDER BY p." + COLUMN_POSITION;
+
+    /**
+     * @see MediaDbHelper
+     */
+    private final MediaDbHelper dbHelper;
+
+    /**
+     * Constructor.
+     *
+     * @param context context
+     */
+    public MediaObjectStore(Context context) {
+        dbHelper = new MediaDbHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Replacing a page with the given mediaobjects, in one transaction.
+     *
+     * @param endpoint endpoint the page was downloaded from
+     * @param page     page number
+     * @param items    mediaobjects on the page, in order
+     */
+    public void putPage(String endpoint, int page, List<MediaObject> items) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] pageArgs = {endpoint, String.valueOf(page)};
+
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_PAGE_ITEMS, COLUMN_ENDPOINT + " = ? AND " + COLUMN_PAGE + " = ?",
+                    pageArgs);
+
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_PAGES + " (" + COLUMN_ENDPOINT + ", "
+                            + COLUMN_PAGE + ", " + COLUMN_FETCHED_AT + ") VALUES (?, ?, ?)",
+                    new Object[]{endpoint, page, System.currentTimeMillis()});
+
+            SQLiteStatement insertMedia = db.compileStatement(INSERT_MEDIA);
+            SQLiteStatement insertItem = db.compileStatement(INSERT_PAGE_ITEM);
+
+            for (int position = 0; position < items.size(); position++) {
+                MediaObject mo = items.get(position);
+                if (mo.getType() == null)
+                    continue;
+
+                insertMedia.clearBindings();
+                insertMedia.bindString(1, mo.getType());
+                insertMedia.bindLong(2, mo.getId());
+                bindNullable(insertMedia, 3, mo.getTitle());
+                if (mo.getReleaseDay() == EpochDay.NONE)
+                    insertMedia.bindNull(4);
+                else
+                    insertMedia.bindLong(4, mo.getReleaseDay());
+                insertMedia.bindString(5, joinGenres(mo.getGenreIds()));
+                if (Float.isNaN(mo.getRatingValue()))
+                    insertMedia.bindNull(6);
+                else
+                    insertMedia.bindDouble(6, mo.getRatingValue());
+                bindNullable(insertMedia, 7, mo.getLanguage());
+                bindNullable(insertMedia, 8, mo.getHandling());
+                bindNullable(insertMedia, 9, mo.getImagePath());
+                insertMedia.executeInsert();
+
+                insertItem.clearBindings();
+                insertItem.bindString(1, endpoint);
+                insertItem.bindLong(2, page);
+                insertItem.bindLong(3, position);
+                insertItem.bindString(4, mo.getType());
+                insertItem.bindLong(5, mo.getId());
+                insertItem.executeInsert();
+            }
+
+            insertMedia.close();
+            insertItem.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reading a stored page.
+     *
+     * @param endpoint endpoint the page was downloaded from
+     * @param page     page number
+     * @return mediaobjects on the page, in order. Null if the page is not stored
+     */
+    public ArrayList<MediaObject> getPage(String endpoint, int page) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_PAGE, new String[]{endpoint, String.valueOf(page)});
+
+        try {
+            if (cursor.getCount() == 0)
+                return null;
+
+            ArrayList<MediaObject> items = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                items.add(new MediaObject.MediaObjectBuilder(cursor.getInt(1))
+                        .type(cursor.getString(0))
+                        .title(cursor.getString(2))
+                        .releaseDay(cursor.isNull(3) ? EpochDay.NONE : cursor.getInt(3))
+                        .genreIds(splitGenres(cursor.getString(4)))
+                        .rating(cursor.isNull(5) ? Float.NaN : cursor.getFloat(5))
+                        .language(cursor.getString(6))
+                        .handling(cursor.getString(7))
+                        .imagePath(cursor.getString(8))
+                        .build());
+            }
+
+            return items;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Applying the retention policy, in one transaction.
+     * Pages older than maxAge are deleted, and the oldest pages beyond maxPages.
+     * Mediaobjects which are no longer on any page are deleted with them.
+     *
+     * @param maxAge   max age in ms of a stored page
+     * @param maxPages max number of stored pages
+     */
+    public void prune(long maxAge, int maxPages) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_PAGES, COLUMN_FETCHED_AT + " < ?",
+                    new String[]{String.valueOf(System.currentTimeMillis() - maxAge)});
+
+            db.execSQL("DELETE FROM " + TABLE_PAGES + " WHERE rowid NOT IN (SELECT rowid FROM "
+                    + TABLE_PAGES + " ORDER BY " + COLUMN_FETCHED_AT + " DESC LIMIT "
+                    + maxPages + ")");
+
+            db.execSQL("DELETE FROM " + TABLE_PAGE_ITEMS + " WHERE NOT EXISTS (SELECT 1 FROM "
+                    + TABLE_PAGES + " pg WHERE pg." + COLUMN_ENDPOINT + " = "
+                    + TABLE_PAGE_ITEMS + "." + COLUMN_ENDPOINT + " AND pg." + COLUMN_PAGE + " = "
+                    + TABLE_PAGE_ITEMS + "." + COLUMN_PAGE + ")");
+
+            db.execSQL("DELETE FROM " + TABLE_MEDIA + " WHERE NOT EXISTS (SELECT 1 FROM "
+                    + TABLE_PAGE_ITEMS + " p WHERE p." + COLUMN_TYPE + " = "
+                    + TABLE_MEDIA + "." + COLUMN_TYPE + " AND p." + COLUMN_ID + " = "
+                    + TABLE_MEDIA + "." + COLUMN_ID + ")");
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Binding a value which may be null.
+     */
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    /**
+     * @param genreIds genre ids
+     * @return genre ids separated by GENRE_SEPARATOR
+     */
+    private static String joinGenres(int[] genreIds) {
+        StringBuilder builder = new StringBuilder();
+        for (int id : genreIds) {
+            if (builder.length() > 0)
+                builder.append(GENRE_SEPARATOR);
+            builder.append(id);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param genres genre column
+     * @return genre ids, unreadable ids are left out
+     */
+    private static int[] splitGenres(String genres) {
+        if (genres == null || genres.isEmpty())
+            return new int[0];
+
+        String[] parts = GENRE_SPLITTER.split(genres);
+        int[] ids = new int[parts.length];
+        int size = 0;
+
+        for (String part : parts) {
+            try {
+                ids[size] = Integer.parseInt(part);
+                size++;
+            } catch (NumberFormatException ignored) {
+                // Not a genre id
+            }
+        }
+
+        return Arrays.copyOf(ids, size);
+    }
+}
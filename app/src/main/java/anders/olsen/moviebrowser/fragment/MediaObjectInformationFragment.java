@@ -10,10 +10,8 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.RequestCreator;
-
 import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.image.ImageLoader;
 import anders.olsen.moviebrowser.listener.MediaObjectFragmentListener;
 import anders.olsen.moviebrowser.model.MediaObject;
 
@@ -87,7 +85,8 @@ public class MediaObjectInformationFragment extends Fragment
 
     /**
      * Setting up views
-     * Image is loaded with Picasso.
+     * Image is loaded with the ImageLoader. The faded background shows the same poster,
+     * so it is served from the memory cache.
      *
      * @param mediaObject MediaObject
      * @see #setText(TextView, String)
@@ -109,12 +108,9 @@ public class MediaObjectInformationFragment extends Fragment
         ImageView logoImg = view.findViewById(R.id.media_image);
         ImageView bgImg = view.findViewById(R.id.background);
 
-        RequestCreator creator = Picasso.with(getActivity()).load(mediaObject.getImagePath())
-                .error(R.drawable.ic_movie_black)
-                .placeholder(R.drawable.ic_movie_black);
-
-        creator.into(logoImg);
-        creator.into(bgImg);
+        ImageLoader imageLoader = ImageLoader.getInstance(getActivity());
+        imageLoader.loadPoster(mediaObject.getImagePath(), logoImg);
+        imageLoader.loadPoster(mediaObject.getImagePath(), bgImg, ImageLoader.getWidth(logoImg));
 
         TextView genreTxt = view.findViewById(R.id.genre);
         TextView releaseTxt = view.findViewById(R.id.release);
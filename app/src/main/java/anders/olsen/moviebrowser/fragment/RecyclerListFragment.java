@@ -105,6 +105,7 @@ public abstract class RecyclerListFragment<AnyType> extends Fragment
 
     /**
      * Appending content to the current list in the fragment.
+     * Only the appended rows are bound, see {@link RecyclerAdapter#setContent(List)}.
      *
      * @param contentList list with content to append
      */
@@ -119,13 +120,11 @@ public abstract class RecyclerListFragment<AnyType> extends Fragment
 
     /**
      * Notifying the adapter about changes in the list content.
+     * The adapter notifies the RecyclerView about the rows which changed.
      */
     protected void notifyAdapter() {
-        if (adapter != null) {
+        if (adapter != null)
             adapter.setContent(this.contentList);
-            adapter.notifyDataSetChanged();
-        }
-
     }
 
 
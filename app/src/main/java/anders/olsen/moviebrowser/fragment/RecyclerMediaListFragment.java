@@ -1,33 +1,103 @@
 package anders.olsen.moviebrowser.fragment;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.adapter.RecyclerMediaListAdapter;
+import anders.olsen.moviebrowser.image.PosterPrefetcher;
 import anders.olsen.moviebrowser.listener.EndlessRecyclerViewScrollListener;
 import anders.olsen.moviebrowser.listener.RecyclerClickListener;
+import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.loader.AccountService;
+import anders.olsen.moviebrowser.loader.RequestScope;
+import anders.olsen.moviebrowser.loader.TmdbManager;
+import anders.olsen.moviebrowser.model.AccountState;
 import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.model.MediaPages;
 
 
 /**
  * Fragment which show a list of MediaObjects in RecyclerViews.
+ * Posters below the visible rows are prefetched, and the prefetching is cancelled when the
+ * content is replaced, e.g. another genre, or the fragment is no longer the visible tab.
+ * When logged in, new rows are annotated with the users account states, e.g. in watchlist.
  *
  * @author Anders Engen Olsen
  * @see RecyclerMediaListAdapter
  * @see RecyclerClickListener
+ * @see PosterPrefetcher
+ * @see AccountService#getAccountStates(List, TmdbListener)
  */
 
 public class RecyclerMediaListFragment extends RecyclerListFragment<MediaObject> {
 
+    /**
+     * Estimated height of a row, in dp. Rows are the poster and a few lines of text.
+     */
+    private static final int ROW_HEIGHT_DP = 96;
+    /**
+     * Number of items in a page from TMDB
+     */
+    private static final int PAGE_SIZE = 20;
+    /**
+     * Max number of pages loaded at once to fill the screen
+     */
+    private static final int MAX_INITIAL_PAGES = 3;
+
+    /**
+     * Prefetching posters below the visible rows
+     */
+    private PosterPrefetcher posterPrefetcher;
+    /**
+     * Loading the next page at the end of the list
+     */
+    private EndlessRecyclerViewScrollListener scrollListener;
+    /**
+     * Number of rows in contentList whose account states are requested
+     */
+    private int annotated;
+    /**
+     * Account state requests, cancelled when the content is replaced
+     */
+    private RequestScope requestScope;
+    /**
+     * Number of pages in the first load, applied to the scroll listener
+     */
+    private int initialPages = 1;
+    /**
+     * Number of items in a page of the first load, 0 if not known
+     */
+    private int pageSize;
+
+    /**
+     * Number of pages needed to fill the screen, and a screen more to scroll into,
+     * so a large screen is filled by the first load.
+     *
+     * @param context context
+     * @return number of pages, 1 to MAX_INITIAL_PAGES
+     */
+    public static int pagesToFill(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        float rowHeight = ROW_HEIGHT_DP * metrics.density;
+        int rows = (int) Math.ceil(2 * metrics.heightPixels / rowHeight);
+        int pages = (rows + PAGE_SIZE - 1) / PAGE_SIZE;
+
+        return Math.max(1, Math.min(MAX_INITIAL_PAGES, pages));
+    }
+
     /**
      * Obtaining bundle with mediaobjects.
      *
@@ -55,6 +125,111 @@ public class RecyclerMediaListFragment extends RecyclerListFragment<MediaObject>
         outState.putParcelableArrayList(CONTENT_KEY, (ArrayList<? extends Parcelable>) contentList);
     }
 
+    /**
+     * Cancelling the prefetching when another tab is shown.
+     */
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+
+        if (!isVisibleToUser && posterPrefetcher != null)
+            posterPrefetcher.cancel();
+    }
+
+    /**
+     * Cancelling the prefetching for the replaced content.
+     */
+    @Override
+    public void setContent(List<MediaObject> contentList) {
+        if (posterPrefetcher != null)
+            posterPrefetcher.cancel();
+
+        if (requestScope != null)
+            requestScope.cancel();
+        // Paging starts over for the new content, e.g. a new search
+        if (scrollListener != null)
+            scrollListener.resetState();
+
+        annotated = 0;
+        initialPages = 1;
+        pageSize = 0;
+        super.setContent(contentList);
+    }
+
+    /**
+     * Setting content loaded as several pages at once.
+     * The next page loaded on scroll end is the one after the pages loaded.
+     *
+     * @param pages merged pages
+     * @see #pagesToFill(Context)
+     */
+    public void setContent(MediaPages pages) {
+        setContent(pages.getMediaObjects());
+
+        initialPages = pages.getPageCount();
+        pageSize = pages.getPageSize();
+        if (scrollListener != null)
+            scrollListener.setInitialPages(initialPages, pageSize);
+    }
+
+    /**
+     * Cancelling the account state requests, so the fragment is not kept alive by them.
+     */
+    @Override
+    public void onDestroy() {
+        if (requestScope != null)
+            requestScope.destroy();
+        super.onDestroy();
+    }
+
+    /**
+     * Prefetching posters for new rows below the visible ones.
+     */
+    @Override
+    protected void notifyAdapter() {
+        super.notifyAdapter();
+
+        if (posterPrefetcher != null)
+            posterPrefetcher.prefetch();
+
+        annotate();
+    }
+
+    /**
+     * Requesting the account states of the rows not annotated yet, when logged in.
+     * The rows are rebound when the states arrive. Rows whose states could not be fetched
+     * are shown without them.
+     */
+    private void annotate() {
+        if (getActivity() == null || adapter == null || contentList == null
+                || annotated >= contentList.size())
+            return;
+
+        TmdbManager tmdb = TmdbManager.getInstance(getActivity());
+        AccountService accountService = tmdb.getAccountService();
+        if (!accountService.isLoggedIn())
+            return;
+
+        if (requestScope == null)
+            requestScope = tmdb.newScope();
+
+        final RecyclerMediaListAdapter mediaAdapter = (RecyclerMediaListAdapter) adapter;
+        List<MediaObject> rows = new ArrayList<>(contentList.subList(annotated, contentList.size()));
+        annotated = contentList.size();
+
+        accountService.getAccountStates(rows, requestScope.bind(new TmdbListener<Map<MediaObject, AccountState>>() {
+            @Override
+            public void onSuccess(Map<MediaObject, AccountState> result) {
+                mediaAdapter.setAccountStates(result);
+            }
+
+            @Override
+            public void onError(String result) {
+                // Rows are shown without account states
+            }
+        }));
+    }
+
     /**
      * Setting up the recycler views in the layout.
      *
@@ -76,11 +251,16 @@ public class RecyclerMediaListFragment extends RecyclerListFragment<MediaObject>
 
         // Adding scroll-listener for pagination
         // Interface fired when scroll to bottom.
-        recyclerView.addOnScrollListener(new EndlessRecyclerViewScrollListener(layoutManager) {
+        scrollListener = new EndlessRecyclerViewScrollListener(layoutManager) {
             @Override
             public void onLoadMore(int page, int totalItemsCount, RecyclerView view) {
                 fragmentListener.onScrollEnd(page, RecyclerMediaListFragment.this);
             }
-        });
+        };
+        scrollListener.setInitialPages(initialPages, pageSize);
+        recyclerView.addOnScrollListener(scrollListener);
+
+        posterPrefetcher = new PosterPrefetcher(recyclerView);
+        recyclerView.addOnScrollListener(posterPrefetcher);
     }
 }
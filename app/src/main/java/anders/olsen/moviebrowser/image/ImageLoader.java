@@ -0,0 +1,330 @@
+package anders.olsen.moviebrowser.image;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.util.Locale;
+
+import anders.olsen.moviebrowser.R;
+
+/**
+ * Loading posters from TMDB into ImageViews.
+ * <p>
+ * The smallest TMDB size variant which is at least as wide as the ImageView is downloaded.
+ * Decoded posters are kept in a memory LRU cache of {@link #MEMORY_CACHE_FRACTION} of the
+ * app memory, and downloaded posters in a disk cache of {@link #DISK_CACHE_SIZE} bytes.
+ * Posters are decoded with {@link Bitmap.Config#RGB_565}, half the memory of ARGB_8888.
+ * <p>
+ * Posters which are soon to be shown can be prefetched at low priority, fewer on metered
+ * networks.
+ *
+ * @author Anders Engen Olsen
+ * @link https://developers.themoviedb.org/3/configuration/get-api-configuration
+ * @see PosterDownloader
+ */
+public class ImageLoader {
+
+    /**
+     * Fired when a poster is shown.
+     *
+     * @see #loadPoster(String, ImageView, PosterCallback)
+     */
+    public interface PosterCallback {
+        void onPosterShown();
+    }
+
+    /**
+     * Base URL for posters, followed by size variant and poster path
+     */
+    private static final String POSTER_BASE_URL = "https://image.tmdb.org/t/p/";
+    /**
+     * Poster widths available at TMDB, in px
+     */
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+    /**
+     * Width used when the width of the ImageView is not known
+     */
+    private static final int DEFAULT_WIDTH = 185;
+    /**
+     * Directory in the app cache dir, where posters are cached
+     */
+    private static final String DISK_CACHE_DIR = "posters";
+    /**
+     * Max size in bytes of the disk cache
+     */
+    private static final int DISK_CACHE_SIZE = 30 * 1024 * 1024;
+    /**
+     * Part of the app memory used by the memory cache, 1 / 8
+     */
+    private static final int MEMORY_CACHE_FRACTION = 8;
+    /**
+     * Number of posters prefetched ahead on unmetered networks, e.g. wifi
+     */
+    private static final int PREFETCH_UNMETERED = 12;
+    /**
+     * Number of posters prefetched ahead on metered networks, e.g. mobile data
+     */
+    private static final int PREFETCH_METERED = 4;
+
+    /**
+     * Singleton
+     */
+    private static ImageLoader imageLoader = null;
+
+    /**
+     * Picasso, with the caches below
+     */
+    private final Picasso picasso;
+    /**
+     * Decoded posters
+     */
+    private final LruCache memoryCache;
+    /**
+     * @see PosterDownloader
+     */
+    private final PosterDownloader downloader;
+    /**
+     * Checking the network type before prefetching
+     */
+    private final ConnectivityManager connectivityManager;
+
+    /**
+     * Private constructor. Called from getInstance().
+     *
+     * @param context application context
+     */
+    private ImageLoader(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024
+                / MEMORY_CACHE_FRACTION;
+
+        memoryCache = new LruCache(memoryCacheSize);
+        downloader = new PosterDownloader(
+                new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_SIZE);
+        picasso = new Picasso.Builder(context)
+                .memoryCache(memoryCache)
+                .downloader(downloader)
+                .defaultBitmapConfig(Bitmap.Config.RGB_565)
+                .build();
+        connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Initializing an ImageLoader if null.
+     *
+     * @param context context
+     * @return Singleton object
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (imageLoader == null)
+            imageLoader = new ImageLoader(context.getApplicationContext());
+
+        return imageLoader;
+    }
+
+    /**
+     * Loading a poster into an ImageView, in the size variant fitting the width of the view.
+     *
+     * @param posterPath poster path from TMDB, may be null
+     * @param view       ImageView
+     */
+    public void loadPoster(String posterPath, ImageView view) {
+        loadPoster(posterPath, view, getWidth(view));
+    }
+
+    /**
+     * Loading a poster into an ImageView, in the size variant fitting the given width.
+     *
+     * @param posterPath poster path from TMDB, may be null
+     * @param view       ImageView
+     * @param width      width in px the poster is shown in
+     */
+    public void loadPoster(String posterPath, ImageView view, int width) {
+        if (posterPath == null) {
+            picasso.cancelRequest(view);
+            view.setImageResource(R.drawable.ic_movie_black);
+            return;
+        }
+
+        posterRequest(posterPath, width).into(view);
+    }
+
+    /**
+     * Loading a poster into an ImageView, and firing the callback when it is shown.
+     * The callback is not fired if there is no poster, or it can not be loaded.
+     *
+     * @param posterPath poster path from TMDB, may be null
+     * @param view       ImageView
+     * @param callback   fired on the main thread when the poster is shown
+     */
+    public void loadPoster(String posterPath, ImageView view, final PosterCallback callback) {
+        if (posterPath == null) {
+            loadPoster(null, view);
+            return;
+        }
+
+        posterRequest(posterPath, getWidth(view)).into(view, new Callback() {
+            @Override
+            public void onSuccess() {
+                callback.onPosterShown();
+            }
+
+            @Override
+            public void onError() {
+                // Placeholder is shown
+            }
+        });
+    }
+
+    /**
+     * @param posterPath poster path from TMDB
+     * @param width      width in px the poster is shown in
+     * @return request for the poster, with placeholder and error drawable
+     */
+    private RequestCreator posterRequest(String posterPath, int width) {
+        return picasso.load(posterUrl(posterPath, width))
+                .error(R.drawable.ic_movie_black)
+                .placeholder(R.drawable.ic_movie_black);
+    }
+
+    /**
+     * Downloading and decoding a poster into the caches at low priority, without showing it.
+     *
+     * @param posterPath poster path from TMDB, may be null
+     * @param width      width in px the poster will be shown in
+     * @param tag        tag used to cancel the prefetch
+     * @see #cancelPrefetch(Object)
+     */
+    public void prefetch(String posterPath, int width, Object tag) {
+        if (posterPath == null)
+            return;
+
+        picasso.load(posterUrl(posterPath, width))
+                .priority(Picasso.Priority.LOW)
+                .tag(tag)
+                .fetch();
+    }
+
+    /**
+     * Cancelling prefetches which have not started.
+     *
+     * @param tag tag given to prefetch
+     */
+    public void cancelPrefetch(Object tag) {
+        picasso.cancelTag(tag);
+    }
+
+    /**
+     * Number of posters to prefetch ahead of the visible ones, based on the network type.
+     *
+     * @return 0 if offline, fewer on metered networks
+     */
+    public int getPrefetchCount() {
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+
+        if (network == null || !network.isConnected())
+            return 0;
+
+        return connectivityManager.isActiveNetworkMetered()
+                ? PREFETCH_METERED : PREFETCH_UNMETERED;
+    }
+
+    /**
+     * @return cache hits and misses, download times and decoded posters, so far
+     */
+    public Stats getStats() {
+        return downloader.getStats(memoryCache.hitCount(), memoryCache.missCount(),
+                memoryCache.size(), memoryCache.maxSize(), picasso.getSnapshot());
+    }
+
+    /**
+     * Finding the url of the smallest size variant at least as wide as the given width.
+     *
+     * @param posterPath poster path from TMDB
+     * @param width      width in px, 0 if not known
+     * @return poster url
+     */
+    static String posterUrl(String posterPath, int width) {
+        if (width <= 0)
+            width = DEFAULT_WIDTH;
+
+        int variant = POSTER_WIDTHS[POSTER_WIDTHS.length - 1];
+        for (int posterWidth : POSTER_WIDTHS) {
+            if (posterWidth >= width) {
+                variant = posterWidth;
+                break;
+            }
+        }
+
+        return POSTER_BASE_URL + "w" + variant + posterPath;
+    }
+
+    /**
+     * @param view ImageView
+     * @return width of the view in px, from the layout params if not laid out yet.
+     * 0 if not known
+     */
+    public static int getWidth(ImageView view) {
+        int width = view.getWidth();
+        if (width <= 0) {
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            width = (params == null) ? 0 : params.width;
+        }
+        return Math.max(0, width - view.getPaddingLeft() - view.getPaddingRight());
+    }
+
+    /**
+     * Counters for the poster caches.
+     */
+    public static class Stats {
+
+        public final int memoryHits;
+        public final int memoryMisses;
+        public final int memorySize;
+        public final int memoryMaxSize;
+        public final long diskHits;
+        public final long diskMisses;
+        public final long downloadedBytes;
+        public final long averageDownloadTime;
+        public final int decodeCount;
+        public final long averageDecodedSize;
+
+        Stats(int memoryHits, int memoryMisses, int memorySize, int memoryMaxSize,
+              long diskHits, long diskMisses, long downloadedBytes,
+              long averageDownloadTime, int decodeCount, long averageDecodedSize) {
+            this.memoryHits = memoryHits;
+            this.memoryMisses = memoryMisses;
+            this.memorySize = memorySize;
+            this.memoryMaxSize = memoryMaxSize;
+            this.diskHits = diskHits;
+            this.diskMisses = diskMisses;
+            this.downloadedBytes = downloadedBytes;
+            this.averageDownloadTime = averageDownloadTime;
+            this.decodeCount = decodeCount;
+            this.averageDecodedSize = averageDecodedSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "memory %d hits / %d misses (%d / %d KB), disk %d hits / %d misses, "
+                            + "downloaded %d KB, avg download %d ms, decoded %d (avg %d KB)",
+                    memoryHits, memoryMisses, memorySize / 1024, memoryMaxSize / 1024,
+                    diskHits, diskMisses, downloadedBytes / 1024,
+                    averageDownloadTime, decodeCount, averageDecodedSize / 1024);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package anders.olsen.moviebrowser.image;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.android.volley.Cache;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.StatsSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Picasso downloader for posters, with a bounded disk cache.
+ * <p>
+ * Poster urls at TMDB never change content, so a poster in the disk cache is used without
+ * revalidation. The cache is a Volley {@link DiskBasedCache}, which evicts the least recently
+ * used posters when full. The bytes are handed to Picasso as a stream, and decoded by Picasso
+ * with the default bitmap config set in {@link ImageLoader}. Download times are measured.
+ * <p>
+ * Called on Picasso's worker threads. Package-private, only used by {@link ImageLoader}.
+ *
+ * @author Anders Engen Olsen
+ * @see ImageLoader
+ */
+class PosterDownloader implements Downloader {
+
+    /**
+     * Timeout in ms when connecting to, and reading from, the image server
+     */
+    private static final int TIMEOUT = 15000;
+
+    /**
+     * Posters on disk
+     */
+    private final DiskBasedCache diskCache;
+    /**
+     * True when the disk cache has been read from disk
+     */
+    private boolean initialized;
+
+    private long diskHits;
+    private long diskMisses;
+    private long downloadedBytes;
+    private long downloadCount;
+    private long downloadTime;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir directory of the disk cache
+     * @param maxSize  max size in bytes of the disk cache
+     */
+    PosterDownloader(File cacheDir, int maxSize) {
+        diskCache = new DiskBasedCache(cacheDir, maxSize);
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        String key = uri.toString();
+        byte[] data = null;
+        boolean cached = false;
+
+        if (NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+            Cache.Entry entry = getDiskCache().get(key);
+            if (entry != null) {
+                data = entry.data;
+                cached = true;
+            }
+            recordDiskLookup(cached);
+        }
+
+        if (data == null) {
+            if (NetworkPolicy.isOfflineOnly(networkPolicy))
+                throw new ResponseException("Poster not in disk cache", networkPolicy, 504);
+
+            data = download(uri, networkPolicy);
+
+            if (NetworkPolicy.shouldWriteToDiskCache(networkPolicy))
+                getDiskCache().put(key, toEntry(data));
+        }
+
+        return new Response(new ByteArrayInputStream(data), cached, data.length);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * @param snapshot Picasso stats, with the posters decoded by Picasso
+     * @return counters measured so far
+     */
+    synchronized ImageLoader.Stats getStats(int memoryHits, int memoryMisses,
+                                            int memorySize, int memoryMaxSize,
+                                            StatsSnapshot snapshot) {
+        return new ImageLoader.Stats(memoryHits, memoryMisses, memorySize, memoryMaxSize,
+                diskHits, diskMisses, downloadedBytes,
+                (downloadCount == 0) ? 0 : downloadTime / downloadCount,
+                snapshot.originalBitmapCount, snapshot.averageOriginalBitmapSize);
+    }
+
+    /**
+     * Downloading a poster.
+     *
+     * @param uri           poster url
+     * @param networkPolicy Picasso network policy
+     * @return poster bytes
+     * @throws IOException on network error, or a response other than 200
+     */
+    private byte[] download(Uri uri, int networkPolicy) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setUseCaches(false);
+
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK)
+                throw new ResponseException(responseCode + " " + connection.getResponseMessage(),
+                        networkPolicy, responseCode);
+
+            byte[] data = readFully(connection.getInputStream());
+            recordDownload(data.length, SystemClock.elapsedRealtime() - start);
+            return data;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return the disk cache, read from disk the first time
+     */
+    private synchronized DiskBasedCache getDiskCache() {
+        if (!initialized) {
+            diskCache.initialize();
+            initialized = true;
+        }
+        return diskCache;
+    }
+
+    private synchronized void recordDiskLookup(boolean hit) {
+        if (hit)
+            diskHits++;
+        else
+            diskMisses++;
+    }
+
+    private synchronized void recordDownload(int bytes, long time) {
+        downloadedBytes += bytes;
+        downloadCount++;
+        downloadTime += time;
+    }
+
+    /**
+     * @param data poster bytes
+     * @return cache entry which never expires
+     */
+    private static Cache.Entry toEntry(byte[] data) {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = data;
+        entry.serverDate = System.currentTimeMillis();
+        entry.ttl = Long.MAX_VALUE;
+        entry.softTtl = Long.MAX_VALUE;
+        entry.responseHeaders = Collections.emptyMap();
+        return entry;
+    }
+
+    /**
+     * @param in stream to read, closed when read
+     * @return all bytes in the stream
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package anders.olsen.moviebrowser.image;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.ImageView;
+
+import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.adapter.RecyclerAdapter;
+import anders.olsen.moviebrowser.model.MediaObject;
+
+/**
+ * Prefetching posters for the items after the last visible item in a RecyclerView,
+ * so they are in the cache when the user scrolls to them.
+ * <p>
+ * The number of items prefetched depends on the network type, see
+ * {@link ImageLoader#getPrefetchCount()}. Posters are prefetched in the size the visible
+ * posters are shown in, so the prefetched poster is found in the memory cache.
+ * <p>
+ * Added as scroll listener to the RecyclerView. {@link #prefetch()} should also be called when
+ * content is added, and {@link #cancel()} when the content is replaced or hidden.
+ *
+ * @author Anders Engen Olsen
+ * @see ImageLoader#prefetch(String, int, Object)
+ */
+public class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * RecyclerView with a LinearLayoutManager and a RecyclerAdapter with mediaobjects
+     */
+    private final RecyclerView recyclerView;
+    /**
+     * @see ImageLoader
+     */
+    private final ImageLoader imageLoader;
+    /**
+     * Last position prefetched
+     */
+    private int prefetchedUntil = RecyclerView.NO_POSITION;
+
+    /**
+     * Constructor.
+     *
+     * @param recyclerView RecyclerView with a LinearLayoutManager, and a RecyclerAdapter with
+     *                     mediaobjects. Posters in the items must have id R.id.poster
+     */
+    public PosterPrefetcher(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        this.imageLoader = ImageLoader.getInstance(recyclerView.getContext());
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        prefetch();
+    }
+
+    /**
+     * Prefetching posters after the last visible item, which have not been prefetched.
+     */
+    public void prefetch() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        RecyclerAdapter adapter = (RecyclerAdapter) recyclerView.getAdapter();
+        if (layoutManager == null || adapter == null)
+            return;
+
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        int width = getPosterWidth(layoutManager);
+
+        // Not laid out yet, prefetched on the first layout
+        if (lastVisible == RecyclerView.NO_POSITION || width == 0)
+            return;
+
+        int count = imageLoader.getPrefetchCount();
+        int last = Math.min(adapter.getItemCount() - 1, lastVisible + count);
+
+        for (int i = Math.max(lastVisible, prefetchedUntil) + 1; i <= last; i++) {
+            MediaObject mediaObject = (MediaObject) adapter.getElement(i);
+            imageLoader.prefetch(mediaObject.getImagePath(), width, this);
+        }
+
+        prefetchedUntil = Math.max(prefetchedUntil, last);
+    }
+
+    /**
+     * Cancelling prefetches which have not started, e.g. when the content is replaced
+     * or another tab is shown.
+     */
+    public void cancel() {
+        imageLoader.cancelPrefetch(this);
+        prefetchedUntil = RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * @param layoutManager LinearLayoutManager
+     * @return width of the posters shown, 0 if not known
+     */
+    private int getPosterWidth(LinearLayoutManager layoutManager) {
+        View child = layoutManager.getChildAt(0);
+        if (child == null)
+            return 0;
+
+        ImageView poster = child.findViewById(R.id.poster);
+        return (poster == null) ? 0 : ImageLoader.getWidth(poster);
+    }
+}
@@ -0,0 +1,20 @@
+package anders.olsen.moviebrowser.listener;
+
+/**
+ * TmdbListener which is also given the stored result, while the fresh result is downloaded.
+ * <p>
+ * onCached is fired at most once, and never after onSuccess. The fresh result is then given to
+ * onSuccess, and should replace the stored result.
+ *
+ * @author Anders Engen Olsen
+ * @see TmdbListener
+ */
+public interface CachedTmdbListener<AnyType> extends TmdbListener<AnyType> {
+
+    /**
+     * Returning the result stored on the device.
+     *
+     * @param result stored result
+     */
+    void onCached(AnyType result);
+}
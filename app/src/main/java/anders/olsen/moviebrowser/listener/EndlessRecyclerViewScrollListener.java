@@ -1,13 +1,21 @@
 package anders.olsen.moviebrowser.listener;
 
+import android.os.SystemClock;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.StaggeredGridLayoutManager;
 
+import java.util.ArrayDeque;
+
 /**
  * Enables endless scrolling through RecyclerViews.
  * Used when calling an API with Pagination.
+ * <p>
+ * The distance from the end at which the next page is requested grows with the scroll velocity
+ * and the time recent pages took to arrive, so a fast fling does not reach the end of the list
+ * before the next page is there. With {@link #setPagesAhead(int)} more than one page can be
+ * requested at once, handed to the list in order through a {@link PageBuffer}.
  *
  * @url https://gist.github.com/nesquena/d09dc68ff07e845cc622
  */
@@ -23,6 +31,30 @@ public abstract class EndlessRecyclerViewScrollListener extends RecyclerView.OnS
     private boolean loading = true;
     // Sets the starting page index
     private int startingPageIndex = 0;
+    // Max number of pages requested, but not yet loaded
+    private int pagesAhead = 1;
+    // Number of pages requested, but not yet loaded
+    private int pendingPages = 0;
+    // Number of items in a page, learned from the first page
+    private int itemsPerPage = 0;
+    // Time each pending page was requested, oldest first
+    private final ArrayDeque<Long> requestTimes = new ArrayDeque<>();
+    // Moving average of the time a page takes to load, in ms
+    private float pageLatency = INITIAL_PAGE_LATENCY;
+    // Moving average of the scroll velocity, in items per ms
+    private float velocity = 0;
+    // Last visible position and time of the previous scroll event
+    private int lastPosition = -1;
+    private long lastScrollTime = 0;
+    // Set when pages are handed to the list through a PageBuffer
+    private PageBuffer<?> pageBuffer;
+
+    // Assumed page latency before any page has loaded, in ms
+    private static final float INITIAL_PAGE_LATENCY = 500;
+    // Weight of the newest sample in the moving averages
+    private static final float SMOOTHING = 0.3f;
+    // Scroll events further apart than this are not used to measure velocity, in ms
+    private static final long MAX_SAMPLE_GAP = 100;
 
     RecyclerView.LayoutManager mLayoutManager;
 
@@ -40,6 +72,44 @@ public abstract class EndlessRecyclerViewScrollListener extends RecyclerView.OnS
         visibleThreshold = visibleThreshold * layoutManager.getSpanCount();
     }
 
+    /**
+     * Allowing more than one page to be requested at once.
+     * Pages may then arrive out of order, use a {@link PageBuffer} to hand them to the list.
+     *
+     * @param pagesAhead max number of pages requested, but not yet loaded
+     */
+    public void setPagesAhead(int pagesAhead) {
+        this.pagesAhead = Math.max(1, pagesAhead);
+    }
+
+    /**
+     * Setting the number of pages in the first load, when more than one page is loaded at once
+     * to fill the screen. The next page requested is the one after them.
+     * The first load may have fewer items than the pages, if duplicates were removed,
+     * so the number of items in a page is given, and not learned from the first load.
+     *
+     * @param pages        number of pages in the first load
+     * @param itemsPerPage number of items in a page, 0 if not known
+     */
+    public void setInitialPages(int pages, int itemsPerPage) {
+        this.currentPage = this.startingPageIndex + Math.max(1, pages) - 1;
+        if (itemsPerPage > 0) {
+            this.itemsPerPage = itemsPerPage;
+        }
+    }
+
+    /**
+     * Setting the buffer which pages are handed to the list through.
+     * Page load times are then measured when the buffer hands a page to the list,
+     * and the buffer is cleared by {@link #resetState()}.
+     *
+     * @param pageBuffer {@link PageBuffer}
+     */
+    public void setPageBuffer(PageBuffer<?> pageBuffer) {
+        this.pageBuffer = pageBuffer;
+        pageBuffer.setScrollListener(this);
+    }
+
     public int getLastVisibleItem(int[] lastVisibleItemPositions) {
         int maxSize = 0;
         for (int i = 0; i < lastVisibleItemPositions.length; i++) {
@@ -57,6 +127,7 @@ public abstract class EndlessRecyclerViewScrollListener extends RecyclerView.OnS
     // but first we check if we are waiting for the previous load to finish.
     @Override
     public void onScrolled(RecyclerView view, int dx, int dy) {
+        long now = SystemClock.uptimeMillis();
         int lastVisibleItemPosition = 0;
         int totalItemCount = mLayoutManager.getItemCount();
 
@@ -70,39 +141,113 @@ public abstract class EndlessRecyclerViewScrollListener extends RecyclerView.OnS
             lastVisibleItemPosition = ((LinearLayoutManager) mLayoutManager).findLastVisibleItemPosition();
         }
 
+        updateVelocity(lastVisibleItemPosition, now);
+
         // If the total item count is zero and the previous isn't, assume the
         // list is invalidated and should be reset back to initial state
         if (totalItemCount < previousTotalItemCount) {
             this.currentPage = this.startingPageIndex;
             this.previousTotalItemCount = totalItemCount;
+            this.pendingPages = 0;
+            this.requestTimes.clear();
             if (totalItemCount == 0) {
                 this.loading = true;
             }
         }
-        // If it’s still loading, we check to see if the dataset count has
-        // changed, if so we conclude it has finished loading and update the current page
-        // number and total item count.
-        if (loading && (totalItemCount > previousTotalItemCount)) {
+        // If the dataset count has changed, we conclude that pages have finished loading
+        // and update the total item count. Without a PageBuffer, the number of pages loaded
+        // is estimated from the number of new items.
+        if (totalItemCount > previousTotalItemCount) {
+            int newItems = totalItemCount - previousTotalItemCount;
+            if (itemsPerPage == 0) {
+                itemsPerPage = newItems;
+            }
+            if (!loading && pageBuffer == null) {
+                pagesLoaded((newItems + itemsPerPage - 1) / itemsPerPage, now);
+            }
             loading = false;
             previousTotalItemCount = totalItemCount;
         }
 
-        // If it isn’t currently loading, we check to see if we have breached
-        // the visibleThreshold and need to reload more data.
-        // If we do need to reload some more data, we execute onLoadMore to fetch the data.
-        // threshold should reflect how many total columns there are too
-        if (!loading && (lastVisibleItemPosition + visibleThreshold) > totalItemCount) {
+        // Waiting for the first page
+        if (loading) {
+            return;
+        }
+
+        // Requesting pages while the items we will have when the pending pages have loaded
+        // are within the threshold of the last visible item.
+        int expectedItemCount = totalItemCount + pendingPages * itemsPerPage;
+        while (pendingPages < pagesAhead
+                && (lastVisibleItemPosition + getThreshold()) > expectedItemCount) {
             currentPage++;
+            pendingPages++;
+            requestTimes.add(now);
             onLoadMore(currentPage, totalItemCount, view);
-            loading = true;
+            expectedItemCount += itemsPerPage;
+        }
+    }
+
+    // Velocity is zero when the list stops
+    @Override
+    public void onScrollStateChanged(RecyclerView view, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            velocity = 0;
+            lastPosition = -1;
         }
     }
 
-    // Call this method whenever performing new searches
+    /**
+     * Called when a page requested with onLoadMore has been handed to the list.
+     * Called by the {@link PageBuffer}, if set.
+     */
+    public void onPageLoaded() {
+        pagesLoaded(1, SystemClock.uptimeMillis());
+    }
+
+    // Call this method whenever performing new searches.
+    // Pages which have not been loaded yet are dropped by the PageBuffer, if set.
     public void resetState() {
         this.currentPage = this.startingPageIndex;
         this.previousTotalItemCount = 0;
         this.loading = true;
+        this.pendingPages = 0;
+        this.requestTimes.clear();
+        this.velocity = 0;
+        this.lastPosition = -1;
+        if (pageBuffer != null) {
+            pageBuffer.clear();
+        }
+    }
+
+    // Items from the end of the list at which the next page is requested:
+    // the fixed threshold, plus the items scrolled past while a page loads.
+    private int getThreshold() {
+        int threshold = visibleThreshold + (int) Math.ceil(velocity * pageLatency);
+        return Math.min(threshold, Math.max(visibleThreshold, itemsPerPage * pagesAhead));
+    }
+
+    // Moving average of the scroll velocity towards the end of the list
+    private void updateVelocity(int position, long now) {
+        long elapsed = now - lastScrollTime;
+        if (lastPosition >= 0 && elapsed > 0 && elapsed <= MAX_SAMPLE_GAP) {
+            float sample = Math.max(0, (position - lastPosition) / (float) elapsed);
+            velocity += SMOOTHING * (sample - velocity);
+        }
+        lastPosition = position;
+        lastScrollTime = now;
+    }
+
+    // Updating the moving average of the page latency for the oldest pending pages
+    private void pagesLoaded(int pages, long now) {
+        for (int i = 0; i < pages; i++) {
+            Long requested = requestTimes.poll();
+            // Pages loaded without onLoadMore, e.g. the first page
+            if (requested == null) {
+                return;
+            }
+            pendingPages--;
+            pageLatency += SMOOTHING * ((now - requested) - pageLatency);
+        }
     }
 
     // Defines the process for actually loading more data based on page
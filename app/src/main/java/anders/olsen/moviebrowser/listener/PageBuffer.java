@@ -0,0 +1,127 @@
+package anders.olsen.moviebrowser.listener;
+
+import android.util.SparseArray;
+
+import java.util.List;
+
+/**
+ * Bounded buffer for pages fetched ahead of time.
+ * <p>
+ * When more than one page is requested at once, the responses can arrive in any order.
+ * Pages are held here until all pages before them have arrived, and then handed to the
+ * {@link PageSink} in order. Responses requested before the last {@link #clear()} are dropped.
+ *
+ * @param <T> items in a page
+ * @author Anders Engen Olsen
+ * @see EndlessRecyclerViewScrollListener#setPageBuffer(PageBuffer)
+ */
+public class PageBuffer<T> {
+
+    /**
+     * Receiving pages in order, on the main thread.
+     *
+     * @param <T> items in a page
+     */
+    public interface PageSink<T> {
+        void onPage(int page, List<T> items);
+    }
+
+    /**
+     * Pages which have arrived before the pages in front of them
+     */
+    private final SparseArray<List<T>> waiting = new SparseArray<>();
+    /**
+     * First page in a list
+     */
+    private final int firstPage;
+    /**
+     * Max number of pages ahead of the next page which are accepted
+     */
+    private final int capacity;
+    /**
+     * @see PageSink
+     */
+    private final PageSink<T> sink;
+    /**
+     * Scroll listener notified when a page is handed to the sink, may be null
+     */
+    private EndlessRecyclerViewScrollListener scrollListener;
+    /**
+     * Next page to hand to the sink
+     */
+    private int nextPage;
+    /**
+     * Increased on clear, responses with an older generation are dropped
+     */
+    private int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param firstPage first page in a list
+     * @param capacity  max number of pages ahead of the next page which are accepted
+     * @param sink      {@link PageSink}
+     */
+    public PageBuffer(int firstPage, int capacity, PageSink<T> sink) {
+        this.firstPage = firstPage;
+        this.capacity = capacity;
+        this.sink = sink;
+        this.nextPage = firstPage;
+    }
+
+    /**
+     * Read before a page is requested, and passed back with the response.
+     *
+     * @return current generation
+     * @see #put(int, int, List)
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Adding a page. The page, and any pages waiting behind it, are handed to the sink
+     * as soon as all pages in front of them have arrived.
+     *
+     * @param generation generation when the page was requested
+     * @param page       page number
+     * @param items      items in the page
+     * @return false if the page was dropped
+     */
+    public boolean put(int generation, int page, List<T> items) {
+        if (generation != this.generation || page < nextPage || page > nextPage + capacity)
+            return false;
+
+        waiting.put(page, items);
+
+        List<T> next;
+        while ((next = waiting.get(nextPage)) != null) {
+            waiting.remove(nextPage);
+            sink.onPage(nextPage++, next);
+
+            if (scrollListener != null)
+                scrollListener.onPageLoaded();
+        }
+
+        return true;
+    }
+
+    /**
+     * Dropping all waiting pages, and all responses which have not arrived yet.
+     * The next page handed to the sink is the first page.
+     */
+    public void clear() {
+        generation++;
+        waiting.clear();
+        nextPage = firstPage;
+    }
+
+    /**
+     * Called by the scroll listener the buffer is set on.
+     *
+     * @param scrollListener scroll listener notified when a page is handed to the sink
+     */
+    void setScrollListener(EndlessRecyclerViewScrollListener scrollListener) {
+        this.scrollListener = scrollListener;
+    }
+}
@@ -0,0 +1,12 @@
+package anders.olsen.moviebrowser.listener;
+
+/**
+ * TmdbListener for a result fetched ahead of time, e.g. a page after the scroll position.
+ * <p>
+ * Fetched with low priority, after the results the user waits for.
+ *
+ * @author Anders Engen Olsen
+ * @see TmdbListener
+ */
+public interface PrefetchTmdbListener<AnyType> extends TmdbListener<AnyType> {
+}
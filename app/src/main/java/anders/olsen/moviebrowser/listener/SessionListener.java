@@ -0,0 +1,15 @@
+package anders.olsen.moviebrowser.listener;
+
+/**
+ * Notified on the main thread when the user logs in, or the session changes.
+ *
+ * @author Anders Engen Olsen
+ * @see anders.olsen.moviebrowser.loader.AccountService#addSessionListener(SessionListener)
+ */
+public interface SessionListener {
+
+    /**
+     * @param loggedIn true if the user has a session
+     */
+    void onSessionChanged(boolean loggedIn);
+}
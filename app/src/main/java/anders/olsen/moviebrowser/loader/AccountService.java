@@ -3,34 +3,33 @@ package anders.olsen.moviebrowser.loader;
 import android.content.Context;
 import android.net.Uri;
 
-import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.listener.SessionListener;
 import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.model.AccountState;
 import anders.olsen.moviebrowser.model.MediaObject;
 
-import static anders.olsen.moviebrowser.constants.JsonConstants.VALUE;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.API_BASE_URL;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.BASE_URL_ACCOUNT;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.FAVORITE;
-import static anders.olsen.moviebrowser.constants.TmdbConstants.JSON_MEDIA_ID;
-import static anders.olsen.moviebrowser.constants.TmdbConstants.JSON_MEDIA_TYPE;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_MOVIE;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_MOVIES;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_TV;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_API_KEY;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_PAGE;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_SESSION_ID;
-import static anders.olsen.moviebrowser.constants.TmdbConstants.RATING;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.URL_ACCOUNT_STATES;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.WATCHLIST;
 
 
@@ -50,76 +49,68 @@ public class AccountService extends BaseService {
      * @see TmdbSession
      */
     private TmdbSession session;
+    /**
+     * The users account states, shared by the account services so a change made through one
+     * is seen by the others
+     *
+     * @see AccountStateLoader
+     */
+    private final AccountStateLoader accountStates;
+    /**
+     * Changes to the users lists and ratings, posted in the background
+     *
+     * @see MutationQueue
+     */
+    private final MutationQueue mutations;
 
     /**
      * Constructor.
      *
-     * @param context    Activity context
-     * @param queue      RequestQueue
-     * @param jsonParser JsonParser
-     * @param apiKey     API-key to TMDB
+     * @param context       Activity context
+     * @param queue         RequestQueue
+     * @param jsonParser    JsonParser
+     * @param apiKey        API-key to TMDB
+     * @param accountStates account states shared by the account services
+     * @param mutations     changes posted in the background, shared by the services
      */
-    AccountService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
+    AccountService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey,
+                   AccountStateLoader accountStates, MutationQueue mutations) {
         super(context, queue, jsonParser, apiKey);
         session = new TmdbSession(context, queue, jsonParser, apiKey);
+        this.accountStates = accountStates;
+        this.mutations = mutations;
     }
 
     /**
-     * Adding mediaobject to watchlist
+     * Adding mediaobject to watchlist.
+     * Shown in the account state at once, and posted in the background.
      *
      * @param mo       MediaObject
-     * @param listener TmdbListener
-     * @see #postJson(JSONObject, Uri, TmdbListener)
+     * @param listener TmdbListener, fired when done or saved for later
+     * @see MutationQueue
      */
     protected void postToWatchList(MediaObject mo, boolean status, TmdbListener<String> listener) {
         if (!validateSession(listener))
             return;
-        Uri uri = Uri.parse(BASE_URL_ACCOUNT + WATCHLIST).buildUpon()
-                .appendQueryParameter(PARAM_API_KEY, apiKey)
-                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
-                .build();
-
-        JSONObject json = new JSONObject();
-        try {
-            json.put(JSON_MEDIA_TYPE, mo.getType());
-            json.put(JSON_MEDIA_ID, mo.getId());
-            json.put(WATCHLIST, status);
 
-        } catch (JSONException err) {
-            listener.onError(context.getString(R.string.error_json));
-            return;
-        }
-
-        postJson(json, uri, listener);
+        accountStates.update(mo, WATCHLIST, status);
+        mutations.setInList(sessionId, mo.getType(), mo.getId(), WATCHLIST, status, listener);
     }
 
     /**
-     * Adding mediaobject to favoritelist
+     * Adding mediaobject to favoritelist.
+     * Shown in the account state at once, and posted in the background.
      *
      * @param mo       MediaObject
-     * @param listener TmdbListener
-     * @see #postJson(JSONObject, Uri, TmdbListener)
+     * @param listener TmdbListener, fired when done or saved for later
+     * @see MutationQueue
      */
     protected void postToFavoriteList(MediaObject mo, boolean status, TmdbListener<String> listener) {
         if (!validateSession(listener))
             return;
 
-        Uri uri = Uri.parse(BASE_URL_ACCOUNT + FAVORITE).buildUpon()
-                .appendQueryParameter(PARAM_API_KEY, apiKey)
-                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
-                .build();
-
-        JSONObject json = new JSONObject();
-        try {
-            json.put(JSON_MEDIA_TYPE, mo.getType());
-            json.put(JSON_MEDIA_ID, mo.getId());
-            json.put(FAVORITE, status);
-
-        } catch (JSONException err) {
-            listener.onError(context.getString(R.string.error_json));
-            return;
-        }
-        postJson(json, uri, listener);
+        accountStates.update(mo, FAVORITE, status);
+        mutations.setInList(sessionId, mo.getType(), mo.getId(), FAVORITE, status, listener);
     }
 
     /**
@@ -144,10 +135,12 @@ public class AccountService extends BaseService {
 
     /**
      * Adding rating to a mediaobject.
+     * Shown in the account state at once, and posted in the background.
      *
      * @param mediaObject movie / tv show to rate
      * @param rating      the rating, 0.5 - 10
-     * @param listener    listener
+     * @param listener    listener, fired when done or saved for later
+     * @see MutationQueue
      */
     public void addRating(MediaObject mediaObject, int rating,
                           final TmdbListener<String> listener) {
@@ -155,24 +148,9 @@ public class AccountService extends BaseService {
         if (!validateSession(listener))
             return;
 
-        String mediaType = mediaObject.getType();
-        int mediaId = mediaObject.getId();
-
-        Uri uri = Uri.parse(API_BASE_URL + mediaType + "/" + mediaId + "/" + RATING)
-                .buildUpon()
-                .appendQueryParameter(PARAM_API_KEY, apiKey)
-                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
-                .build();
-
-        JSONObject json = new JSONObject();
-        try {
-            json.put(VALUE, rating);
-        } catch (JSONException err) {
-            listener.onError(context.getString(R.string.error_json));
-            return;
-        }
-
-        postJson(json, uri, listener);
+        accountStates.updateRating(mediaObject, rating);
+        mutations.setRating(sessionId, mediaObject.getType(), mediaObject.getId(), rating,
+                listener);
     }
 
     /**
@@ -186,9 +164,29 @@ public class AccountService extends BaseService {
         return session.isLoggedIn();
     }
 
+    /**
+     * Notifying a listener when the user logs in, e.g. to update the menu.
+     * Must be removed again, e.g. when the activity is destroyed.
+     *
+     * @param listener notified on the main thread
+     * @see SessionState
+     */
+    public void addSessionListener(SessionListener listener) {
+        SessionState.getInstance(context).addListener(listener);
+    }
 
     /**
-     * Validating a session, checking that the user has a session id in shared preferences.
+     * @param listener listener to remove
+     * @see #addSessionListener(SessionListener)
+     */
+    public void removeSessionListener(SessionListener listener) {
+        SessionState.getInstance(context).removeListener(listener);
+    }
+
+
+    /**
+     * Validating a session, checking that the user has a session id.
+     * The session id is read from memory, see {@link SessionState}.
      *
      * @param listener TmdbListener, onError() fired if no session id.
      * @return true if valid session id
@@ -199,91 +197,117 @@ public class AccountService extends BaseService {
             listener.onError(context.getString(R.string.not_logged_in));
             return false;
         }
+
         return true;
     }
 
     /**
-     * Called from all methods where a list is fetched
+     * Checking whether a mediaobject is in one of the users lists.
+     * Answered from the account state of the mediaobject, which is cached for a short time.
      *
-     * @param page      page from API
-     * @param listType  favorite / watchlist
-     * @param mediaType movie / tv show
-     * @param listener  TmdbListener
+     * @param mo       mediaobject to check
+     * @param listType favorite / watchlist
+     * @param listener fired with true if in list
+     * @see AccountStateLoader
      */
-    protected void fetchList(int page, String listType, final String mediaType,
-                             final TmdbListener<ArrayList<MediaObject>> listener) {
+    protected void hasInList(MediaObject mo, final String listType,
+                             final TmdbListener<Boolean> listener) {
         if (!validateSession(listener))
             return;
 
-        String type = (mediaType.equals(MEDIA_TYPE_MOVIE)) ? MEDIA_TYPE_MOVIES : MEDIA_TYPE_TV;
+        accountStates.get(mo, new TmdbListener<AccountState>() {
+            @Override
+            public void onSuccess(AccountState result) {
+                listener.onSuccess(listType.equals(FAVORITE)
+                        ? result.isFavorite() : result.isInWatchlist());
+            }
 
-        Uri uri = Uri.parse(BASE_URL_ACCOUNT + listType + "/" + type).buildUpon()
-                .appendQueryParameter(PARAM_API_KEY, apiKey)
-                .appendQueryParameter(PARAM_PAGE, String.valueOf(page))
-                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
-                .build();
+            @Override
+            public void onError(String result) {
+                listener.onError(result);
+            }
+        });
+    }
 
-        fetchMediaObjects(uri.toString(), listener, mediaType);
+    /**
+     * Finding the account states of many mediaobjects, e.g. a page in a list.
+     * At most a few requests are running at the same time, and cached states are used.
+     * Mediaobjects whose state could not be fetched are left out.
+     *
+     * @param mediaObjects movies and / or tv shows
+     * @param listener     fired with the account states by mediaobject
+     * @see AccountStateLoader#getAll(List, TmdbListener)
+     */
+    public void getAccountStates(List<MediaObject> mediaObjects,
+                                 TmdbListener<Map<MediaObject, AccountState>> listener) {
+        if (!validateSession(listener))
+            return;
+
+        accountStates.getAll(mediaObjects, listener);
     }
 
     /**
-     * Posting JSON to TMDB
+     * Fetching the account state of a mediaobject from TMDB.
+     * Always revalidated, the response is small and the loader caches it.
      *
-     * @param jsonPost Json to post
-     * @param uri      uri to post to
-     * @param listener listener, fired when call done
+     * @param mo       movie / tv show
+     * @param listener fired with the account state
+     * @see TmdbManager
      */
-    private void postJson(JSONObject jsonPost, Uri uri, final TmdbListener<String> listener) {
-        JsonObjectRequest postRequest = new JsonObjectRequest(Request.Method.POST,
-                uri.toString(), jsonPost, new Response.Listener<JSONObject>() {
-            @Override
-            public void onResponse(JSONObject response) {
+    void fetchAccountState(final MediaObject mo,
+                           final TmdbListener<AccountState> listener) {
+        if (!validateSession(listener))
+            return;
 
-                boolean success = jsonParser.parseJsonResponse(response);
+        Uri uri = Uri.parse(API_BASE_URL + mo.getType() + "/" + mo.getId() + "/"
+                + URL_ACCOUNT_STATES).buildUpon()
+                .appendQueryParameter(PARAM_API_KEY, apiKey)
+                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
+                .build();
 
-                if (success)
-                    listener.onSuccess(context.getString(R.string.done));
-                else
-                    listener.onError(context.getString(R.string.error));
+        ParsedJsonRequest<AccountState> request = new ParsedJsonRequest<>(uri.toString(),
+                CachePolicy.ACCOUNT, new ParsedJsonRequest.Parser<AccountState>() {
+            @Override
+            public AccountState parse(JSONObject json) throws JSONException {
+                return jsonParser.parseAccountState(json);
+            }
+        }, new Response.Listener<AccountState>() {
+            @Override
+            public void onResponse(AccountState state) {
+                listener.onSuccess(mutations.withPending(mo, state));
             }
         }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                listener.onError(context.getString(R.string.error));
+                listener.onError(errorMessage(error));
             }
         });
-        queue.add(postRequest);
+        request.setPriority(SchedulerConfig.SYNC);
+        queue.add(request);
     }
 
     /**
-     * Constructing an "inner" listener which is used to loop through an array of mediaobjects,
-     * returning true if the supplied media object is in the fetched arraylist.
+     * Called from all methods where a list is fetched
      *
-     * @param mo       mediaobject to check is in list
-     * @param listener fired when list is checked
-     * @return TmdbListener
+     * @param page      page from API
+     * @param listType  favorite / watchlist
+     * @param mediaType movie / tv show
+     * @param listener  TmdbListener
      */
-    protected TmdbListener<ArrayList<MediaObject>> constructListInnerListener(
-            final MediaObject mo, final TmdbListener<Boolean> listener) {
-
-        TmdbListener<ArrayList<MediaObject>> innerListener =
-                new TmdbListener<ArrayList<MediaObject>>() {
-                    @Override
-                    public void onSuccess(ArrayList<MediaObject> result) {
-                        for (MediaObject m : result) {
-                            if (m.getId() == mo.getId()) {
-                                listener.onSuccess(true);
-                                return;
-                            }
-                        }
-                        listener.onSuccess(false);
-                    }
-
-                    @Override
-                    public void onError(String result) {
-                        listener.onError(context.getString(R.string.error));
-                    }
-                };
-        return innerListener;
+    protected void fetchList(int page, String listType, final String mediaType,
+                             final TmdbListener<ArrayList<MediaObject>> listener) {
+        if (!validateSession(listener))
+            return;
+
+        String type = (mediaType.equals(MEDIA_TYPE_MOVIE)) ? MEDIA_TYPE_MOVIES : MEDIA_TYPE_TV;
+
+        Uri uri = Uri.parse(BASE_URL_ACCOUNT + listType + "/" + type).buildUpon()
+                .appendQueryParameter(PARAM_API_KEY, apiKey)
+                .appendQueryParameter(PARAM_PAGE, String.valueOf(page))
+                .appendQueryParameter(PARAM_SESSION_ID, sessionId)
+                .build();
+
+        fetchMediaObjects(uri.toString(), listener, mediaType, CachePolicy.ACCOUNT,
+                SchedulerConfig.LISTS);
     }
 }
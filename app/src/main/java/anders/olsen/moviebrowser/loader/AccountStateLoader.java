@@ -0,0 +1,314 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.model.AccountState;
+import anders.olsen.moviebrowser.model.MediaObject;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.FAVORITE;
+
+/**
+ * Loading the users account states, e.g. whether a movie is in the watchlist.
+ * <p>
+ * An account state is a small response per mediaobject, instead of all pages of a list.
+ * Account states are cached for {@link #MAX_AGE}, since the lists may be changed at TMDB.
+ * Changes made by the user are applied to the cache at once.
+ * When the states of many mediaobjects are needed, e.g. a page in a list, at most
+ * {@link #MAX_IN_FLIGHT} requests are running, and the rest wait in a queue.
+ * A mediaobject which is already being fetched is not fetched again.
+ * <p>
+ * Replaces the local membership index, which synced every page of the users lists in the
+ * background. Account states are small, always current with TMDB, and also hold the rating.
+ * <p>
+ * Must only be used on the main thread, where Volley delivers responses.
+ * Package-private, only used by {@link AccountService}.
+ *
+ * @author Anders Engen Olsen
+ * @see AccountService#getAccountStates(List, TmdbListener)
+ */
+class AccountStateLoader {
+
+    /**
+     * Fetching the account state of a mediaobject.
+     */
+    interface StateFetcher {
+        void fetch(MediaObject mo, TmdbListener<AccountState> listener);
+    }
+
+    /**
+     * Time a fetched account state is used before it is fetched again
+     */
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Max number of requests running at the same time
+     */
+    private static final int MAX_IN_FLIGHT = 4;
+    /**
+     * Max number of cached account states, the least recently used are dropped
+     */
+    private static final int MAX_CACHED = 500;
+
+    /**
+     * @see StateFetcher
+     */
+    private final StateFetcher fetcher;
+    /**
+     * Cached account states, in access order
+     */
+    private final LinkedHashMap<MediaObject, CachedState> cache =
+            new LinkedHashMap<MediaObject, CachedState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MediaObject, CachedState> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+    /**
+     * Listeners waiting for a mediaobject, queued or being fetched
+     */
+    private final Map<MediaObject, List<TmdbListener<AccountState>>> waiting = new HashMap<>();
+    /**
+     * Mediaobjects waiting for a free request
+     */
+    private final ArrayDeque<MediaObject> queue = new ArrayDeque<>();
+    /**
+     * Number of requests running, also those from before the last invalidate
+     */
+    private int inFlight;
+    /**
+     * Increased on invalidate, responses to older requests are ignored
+     */
+    private int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param fetcher fetching account states
+     */
+    AccountStateLoader(StateFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Finding the account state of a mediaobject.
+     * Answered at once if cached, otherwise when fetched.
+     *
+     * @param mo       mediaobject
+     * @param listener fired with the account state
+     */
+    void get(MediaObject mo, TmdbListener<AccountState> listener) {
+        CachedState cached = cache.get(mo);
+        if (cached != null && SystemClock.elapsedRealtime() - cached.time <= MAX_AGE) {
+            listener.onSuccess(cached.state);
+            return;
+        }
+
+        List<TmdbListener<AccountState>> listeners = waiting.get(mo);
+        if (listeners != null) {
+            listeners.add(listener);
+            return;
+        }
+
+        listeners = new ArrayList<>();
+        listeners.add(listener);
+        waiting.put(mo, listeners);
+        queue.add(mo);
+        fetchNext();
+    }
+
+    /**
+     * Finding the account states of many mediaobjects, e.g. a page in a list.
+     * Fired once, when all are answered. Mediaobjects which failed are left out,
+     * onError is only fired if all failed.
+     *
+     * @param mediaObjects mediaobjects
+     * @param listener     fired with the account states by mediaobject
+     */
+    void getAll(List<MediaObject> mediaObjects, final TmdbListener<Map<MediaObject, AccountState>> listener) {
+        final Map<MediaObject, AccountState> states = new HashMap<>();
+        final int[] remaining = {mediaObjects.size()};
+        final String[] error = {null};
+
+        if (mediaObjects.isEmpty()) {
+            listener.onSuccess(states);
+            return;
+        }
+
+        for (final MediaObject mo : mediaObjects) {
+            get(mo, new TmdbListener<AccountState>() {
+                @Override
+                public void onSuccess(AccountState result) {
+                    states.put(mo, result);
+                    done();
+                }
+
+                @Override
+                public void onError(String result) {
+                    error[0] = result;
+                    done();
+                }
+
+                private void done() {
+                    if (--remaining[0] > 0)
+                        return;
+
+                    if (states.isEmpty() && error[0] != null)
+                        listener.onError(error[0]);
+                    else
+                        listener.onSuccess(states);
+                }
+            });
+        }
+    }
+
+    /**
+     * Changing a cached account state, e.g. when the user changes a list.
+     * Nothing is changed if the state is not cached, it is fetched when needed.
+     *
+     * @param mo       mediaobject
+     * @param listType favorite / watchlist
+     * @param member   true if added, false if removed
+     */
+    void update(MediaObject mo, String listType, boolean member) {
+        CachedState cached = cache.get(mo);
+        if (cached == null)
+            return;
+
+        AccountState state = FAVORITE.equals(listType)
+                ? cached.state.withFavorite(member) : cached.state.withWatchlist(member);
+        cache.put(mo, new CachedState(state, SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Changing the rating in a cached account state.
+     *
+     * @param mo     mediaobject
+     * @param rating the users rating
+     */
+    void updateRating(MediaObject mo, float rating) {
+        CachedState cached = cache.get(mo);
+        if (cached != null)
+            cache.put(mo, new CachedState(cached.state.withRating(rating),
+                    SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Dropping a cached account state, which is fetched again when needed.
+     *
+     * @param mo mediaobject
+     */
+    void forget(MediaObject mo) {
+        cache.remove(mo);
+    }
+
+    /**
+     * Dropping all account states, e.g. when the user logs in with another account.
+     * Mediaobjects waiting are fetched again, when the requests still running have finished.
+     */
+    void invalidate() {
+        generation++;
+        cache.clear();
+        queue.clear();
+        queue.addAll(waiting.keySet());
+        fetchNext();
+    }
+
+    /**
+     * Fetching queued mediaobjects, while fewer than MAX_IN_FLIGHT are running.
+     */
+    private void fetchNext() {
+        while (inFlight < MAX_IN_FLIGHT && !queue.isEmpty()) {
+            final MediaObject mo = queue.poll();
+            final int generation = this.generation;
+            final long started = SystemClock.elapsedRealtime();
+            inFlight++;
+
+            fetcher.fetch(mo, new TmdbListener<AccountState>() {
+                @Override
+                public void onSuccess(AccountState result) {
+                    if (generation != AccountStateLoader.this.generation) {
+                        stale();
+                        return;
+                    }
+
+                    // Keeping a change made by the user while the request was running
+                    CachedState cached = cache.get(mo);
+                    if (cached != null && cached.time >= started)
+                        result = cached.state;
+                    else
+                        cache.put(mo, new CachedState(result, started));
+
+                    done(mo).onSuccess(result);
+                }
+
+                @Override
+                public void onError(String result) {
+                    if (generation != AccountStateLoader.this.generation) {
+                        stale();
+                        return;
+                    }
+
+                    done(mo).onError(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Starting the next request when a request from before the last invalidate has finished.
+     * Its listeners are not fired, the mediaobject is fetched again.
+     */
+    private void stale() {
+        inFlight--;
+        fetchNext();
+    }
+
+    /**
+     * Removing the listeners waiting for a mediaobject, and starting the next request.
+     *
+     * @param mo mediaobject which was fetched
+     * @return listener firing the removed listeners
+     */
+    private TmdbListener<AccountState> done(MediaObject mo) {
+        final List<TmdbListener<AccountState>> listeners = waiting.remove(mo);
+        inFlight--;
+        fetchNext();
+
+        return new TmdbListener<AccountState>() {
+            @Override
+            public void onSuccess(AccountState result) {
+                if (listeners != null)
+                    for (TmdbListener<AccountState> listener : listeners)
+                        listener.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String result) {
+                if (listeners != null)
+                    for (TmdbListener<AccountState> listener : listeners)
+                        listener.onError(result);
+            }
+        };
+    }
+
+    /**
+     * Account state, and the time it was fetched.
+     */
+    private static class CachedState {
+        private final AccountState state;
+        private final long time;
+
+        private CachedState(AccountState state, long time) {
+            this.state = state;
+            this.time = time;
+        }
+    }
+}
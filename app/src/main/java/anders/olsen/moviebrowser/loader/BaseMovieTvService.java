@@ -2,21 +2,31 @@ package anders.olsen.moviebrowser.loader;
 
 import android.content.Context;
 import android.net.Uri;
+import android.util.JsonReader;
 
-import com.android.volley.Request;
+import com.android.volley.ParseError;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import anders.olsen.moviebrowser.R;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.model.Genre;
+import anders.olsen.moviebrowser.model.MediaDetails;
 import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.model.MediaPages;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.APPEND_ACCOUNT_STATES;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.APPEND_DETAILS;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_API_KEY;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_APPEND_TO_RESPONSE;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_SESSION_ID;
 
 /**
  * Abstract class, responsible for fetching mediaobjects and genres.
@@ -29,13 +39,35 @@ import anders.olsen.moviebrowser.model.MediaObject;
  */
 public abstract class BaseMovieTvService extends BaseService {
 
+    /**
+     * Session of the logged in user, used to append account states to details
+     *
+     * @see TmdbSession
+     */
+    private final TmdbSession session;
+    /**
+     * @see GenreCatalog
+     */
+    private final GenreCatalog genreCatalog;
+    /**
+     * Changes to the users lists not yet posted, applied to the account states in details
+     *
+     * @see MutationQueue
+     */
+    private final MutationQueue mutations;
+
     /**
      * Constructor.
      *
-     * @param context activity context
+     * @param context   activity context
+     * @param mutations changes posted in the background, shared by the services
      */
-    BaseMovieTvService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
+    BaseMovieTvService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey,
+                       MutationQueue mutations) {
         super(context, queue, jsonParser, apiKey);
+        this.mutations = mutations;
+        session = new TmdbSession(context, queue, jsonParser, apiKey);
+        genreCatalog = GenreCatalog.getInstance(context);
     }
 
     /**
@@ -71,9 +103,10 @@ public abstract class BaseMovieTvService extends BaseService {
     public abstract void getTopRated(int page, final TmdbListener<ArrayList<MediaObject>> listener);
 
     /**
-     * Downloading all genres.
+     * Finding all genres, downloaded when stale.
      *
-     * @param listener fired when downloaded.
+     * @param listener fired with the genres, may be null to only refresh them
+     * @see GenreCatalog
      */
     public abstract void getAllGenres(final TmdbListener<ArrayList<Genre>> listener);
 
@@ -87,6 +120,61 @@ public abstract class BaseMovieTvService extends BaseService {
     public abstract void getByGenre(int page, Genre genre,
                                     final TmdbListener<ArrayList<MediaObject>> listener);
 
+    /**
+     * Fetching several pages of upcoming movie / tv at once, fired once with the merged pages.
+     *
+     * @param firstPage first page to load from API
+     * @param pageCount number of pages
+     * @param listener  fired when all pages are downloaded, with the number of pages loaded
+     * @see PageBatch
+     */
+    public void getUpcoming(int firstPage, int pageCount,
+                            final TmdbListener<MediaPages> listener) {
+        PageBatch.fetch(firstPage, pageCount, new PageBatch.PageFetcher() {
+            @Override
+            public void fetch(int page, TmdbListener<ArrayList<MediaObject>> pageListener) {
+                getUpcoming(page, pageListener);
+            }
+        }, listener);
+    }
+
+    /**
+     * Fetching several pages of top rated movie / tv at once, fired once with the merged pages.
+     *
+     * @param firstPage first page to load from API
+     * @param pageCount number of pages
+     * @param listener  fired when all pages are downloaded, with the number of pages loaded
+     * @see PageBatch
+     */
+    public void getTopRated(int firstPage, int pageCount,
+                            final TmdbListener<MediaPages> listener) {
+        PageBatch.fetch(firstPage, pageCount, new PageBatch.PageFetcher() {
+            @Override
+            public void fetch(int page, TmdbListener<ArrayList<MediaObject>> pageListener) {
+                getTopRated(page, pageListener);
+            }
+        }, listener);
+    }
+
+    /**
+     * Fetching several pages by genre at once, fired once with the merged pages.
+     *
+     * @param firstPage first page to load from API
+     * @param pageCount number of pages
+     * @param genre     {@link Genre}
+     * @param listener  fired when all pages are downloaded, with the number of pages loaded
+     * @see PageBatch
+     */
+    public void getByGenre(int firstPage, int pageCount, final Genre genre,
+                           final TmdbListener<MediaPages> listener) {
+        PageBatch.fetch(firstPage, pageCount, new PageBatch.PageFetcher() {
+            @Override
+            public void fetch(int page, TmdbListener<ArrayList<MediaObject>> pageListener) {
+                getByGenre(page, genre, pageListener);
+            }
+        }, listener);
+    }
+
     /**
      * Returning similar media objects.
      *
@@ -96,53 +184,143 @@ public abstract class BaseMovieTvService extends BaseService {
      */
     public abstract void getSimilar(int id, int page, final TmdbListener<ArrayList<MediaObject>> listener);
 
+    /**
+     * Fetching a single movie / tv, with its trailer, the first page of similar mediaobjects,
+     * and whether it is in the users lists if logged in. One request.
+     *
+     * @param id       mediaobject id
+     * @param listener fired when downloaded
+     */
+    public abstract void getDetails(int id, final TmdbListener<MediaDetails> listener);
+
 
     /**
-     * Downloading JSON containing genres
+     * Downloading the details of a single mediaobject, with videos and similar mediaobjects
+     * appended to the response. When logged in, the account states are appended as well,
+     * and the response is always revalidated, since the user can change the lists.
+     * Changes to the lists not yet posted are applied to the account states.
+     * The details are parsed on a network thread.
      *
-     * @param url url with genres
-     * @see JsonParser#parseGenres(JSONObject)
+     * @param url      url with details, without parameters
+     * @param type     mediaobject type, movie / tv
+     * @param listener fired when downloaded
+     * @see JsonParser#parseDetails(JsonReader, String)
      */
-    void fetchMediaGenres(String url, final TmdbListener<ArrayList<Genre>> listener) {
+    void fetchDetails(String url, final String type, final TmdbListener<MediaDetails> listener) {
+        String sessionId = session.getSessionId();
+
+        Uri.Builder builder = Uri.parse(url).buildUpon()
+                .appendQueryParameter(PARAM_API_KEY, apiKey);
+        if (sessionId == null)
+            builder.appendQueryParameter(PARAM_APPEND_TO_RESPONSE, APPEND_DETAILS);
+        else
+            builder.appendQueryParameter(PARAM_APPEND_TO_RESPONSE,
+                    APPEND_DETAILS + "," + APPEND_ACCOUNT_STATES)
+                    .appendQueryParameter(PARAM_SESSION_ID, sessionId);
+
+        CachePolicy policy = (sessionId == null) ? CachePolicy.DETAILS : CachePolicy.ACCOUNT;
+
+        final MediaObjectRequest<MediaDetails> request = new MediaObjectRequest<>(
+                builder.build().toString(), policy,
+                new MediaObjectRequest.StreamParser<MediaDetails>() {
+            @Override
+            public MediaDetails parse(JsonReader reader) throws IOException {
+                return jsonParser.parseDetails(reader, type);
+            }
+        }, new Response.Listener<MediaDetails>() {
+
+            @Override
+            public void onResponse(MediaDetails details) {
+                if (details == null)
+                    listener.onError(context.getString(R.string.error));
+                else
+                    listener.onSuccess(mutations.withPending(details));
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                listener.onError(errorMessage(error));
+            }
+        }
+        );
+        request.setPriority(SchedulerConfig.DETAILS);
+        RequestScope.tag(request, listener);
+        queue.add(request);
+    }
+
+    /**
+     * Finding the genres of a type in the {@link GenreCatalog}, downloading them if stale.
+     * The genres are parsed on a network thread. If the download fails, the stale genres
+     * are returned instead of an error, if any.
+     *
+     * @param url      url with genres
+     * @param type     mediaobject type, movie / tv
+     * @param listener fired with the genres, may be null to only refresh the catalog
+     * @see JsonParser#parseGenres(JSONObject, String)
+     */
+    void fetchMediaGenres(String url, final String type,
+                          final TmdbListener<ArrayList<Genre>> listener) {
+        if (!genreCatalog.isStale(type)) {
+            if (listener != null)
+                listener.onSuccess(genreCatalog.getGenres(type));
+            return;
+        }
+
         // Volley-request
-        final JsonObjectRequest jsonObjectRequest = new JsonObjectRequest(
-                Request.Method.GET, url, null, new Response.Listener<JSONObject>() {
+        final ParsedJsonRequest<ArrayList<Genre>> request = new ParsedJsonRequest<>(
+                url, CachePolicy.GENRES, new ParsedJsonRequest.Parser<ArrayList<Genre>>() {
+            @Override
+            public ArrayList<Genre> parse(JSONObject json) throws JSONException {
+                return jsonParser.parseGenres(json, type);
+            }
+        }, new Response.Listener<ArrayList<Genre>>() {
 
             @Override
-            public void onResponse(JSONObject response) {
-                ArrayList<Genre> genres = jsonParser.parseGenres(response);
+            public void onResponse(ArrayList<Genre> genres) {
                 if (listener != null)
                     listener.onSuccess(genres);
             }
         }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                if (listener != null)
-                    listener.onError(context.getString(R.string.error));
+                if (listener == null)
+                    return;
+
+                ArrayList<Genre> stale = genreCatalog.getGenres(type);
+                if (!stale.isEmpty())
+                    listener.onSuccess(stale);
+                else
+                    listener.onError(errorMessage(error));
             }
         }
         );
-        queue.add(jsonObjectRequest);
+        request.setPriority(SchedulerConfig.LISTS);
+        RequestScope.tag(request, listener);
+        queue.add(request);
     }
 
     /**
      * Returning youtube id for given mediaId, if one is present.
-     * The youtube ID references a trailer or teaser for the mediaobject
+     * The youtube ID references a trailer or teaser for the mediaobject.
+     * onError() is fired if no trailer is found.
      *
      * @param uri TMDB API url
-     * @throws java.util.NoSuchElementException no trailer url found
+     * @see JsonParser#parseTrailerID(JSONObject)
      */
     void getTrailerUrl(Uri uri, final TmdbListener<String> listener) {
         // Volley-call
-        final JsonObjectRequest json = new JsonObjectRequest(
-                Request.Method.GET, uri.toString(),
-                null, new Response.Listener<JSONObject>() {
+        final ParsedJsonRequest<String> request = new ParsedJsonRequest<>(
+                uri.toString(), CachePolicy.DETAILS, new ParsedJsonRequest.Parser<String>() {
+            @Override
+            public String parse(JSONObject json) throws JSONException {
+                return jsonParser.parseTrailerID(json);
+            }
+        }, new Response.Listener<String>() {
 
             @Override
-            public void onResponse(JSONObject response) {
-                String trailer = jsonParser.parseTrailerID(response);
+            public void onResponse(String trailer) {
                 if (trailer == null) {
-                    listener.onError(context.getString(R.string.error));
+                    listener.onError(context.getString(R.string.trailer_not_found));
                     return;
                 }
                 listener.onSuccess(trailer);
@@ -150,10 +328,15 @@ public abstract class BaseMovieTvService extends BaseService {
         }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                listener.onError(context.getString(R.string.error));
+                if (error instanceof ParseError)
+                    listener.onError(context.getString(R.string.trailer_not_found));
+                else
+                    listener.onError(context.getString(R.string.error));
             }
         }
         );
-        queue.add(json);
+        request.setPriority(SchedulerConfig.DETAILS);
+        RequestScope.tag(request, listener);
+        queue.add(request);
     }
 }
@@ -1,18 +1,22 @@
 package anders.olsen.moviebrowser.loader;
 
 import android.content.Context;
+import android.util.JsonReader;
 
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.TimeoutError;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-
-import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.listener.CachedTmdbListener;
+import anders.olsen.moviebrowser.listener.PrefetchTmdbListener;
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.model.MediaObject;
 
@@ -39,6 +43,23 @@ public abstract class BaseService {
      * API KEY
      */
     protected String apiKey;
+    /**
+     * Pages stored on the device
+     *
+     * @see MediaRepository
+     */
+    private final MediaRepository repository;
+    /**
+     * Merging identical mediaobject requests in flight.
+     * Each listener gets its own list, since the lists are modified by the activities.
+     */
+    private final RequestCoalescer<ArrayList<MediaObject>> mediaObjectRequests =
+            new RequestCoalescer<ArrayList<MediaObject>>() {
+                @Override
+                ArrayList<MediaObject> copy(ArrayList<MediaObject> result) {
+                    return new ArrayList<>(result);
+                }
+            };
 
     /**
      * Constructor.
@@ -48,6 +69,7 @@ public abstract class BaseService {
         this.queue = queue;
         this.jsonParser = jsonParser;
         this.apiKey = apiKey;
+        this.repository = MediaRepository.getInstance(context);
     }
 
     /**
@@ -57,27 +79,178 @@ public abstract class BaseService {
      * @param url      API URL
      * @param listener callback, fired when downloaded
      * @param type     mediaobject type, movie / tv.
-     * @see JsonParser#parseMediaObjects(JSONObject, String)
+     * @see #fetchMediaObjects(String, TmdbListener, String, CachePolicy, Request.Priority)
      */
     void fetchMediaObjects(String url,
                            final TmdbListener<ArrayList<MediaObject>> listener,
                            final String type) {
-        // Volley-request
-        final JsonObjectRequest json = new JsonObjectRequest(
-                Request.Method.GET, url, null, new Response.Listener<JSONObject>() {
+        fetchMediaObjects(url, listener, type, CachePolicy.LISTS, SchedulerConfig.LISTS);
+    }
+
+    /**
+     * Fetching JSON from given URL. Listener fired when response is received.
+     * MediaObjects are extracted from the JSON through JsonParser, before the listener is fired.
+     * If an identical request is in flight, no new request is sent, the listener is fired
+     * from the response to the request in flight.
+     * <p>
+     * Downloaded pages are stored in the {@link MediaRepository}. A {@link CachedTmdbListener}
+     * is given the stored page while the fresh page is downloaded. If TMDB can not be reached,
+     * the stored page is returned instead of an error. Other errors, e.g. an expired session or
+     * an invalid response, are returned as errors. The users own lists,
+     * {@link CachePolicy#ACCOUNT}, are not stored.
+     * <p>
+     * A {@link PrefetchTmdbListener} is fetched with {@link SchedulerConfig#PREFETCH} priority.
+     * When another listener joins a prefetch not yet sent, it is sent at once with the priority
+     * of that listener. The request is cancelled when all listeners waiting for it are cancelled,
+     * see {@link RequestScope}.
+     *
+     * @param url      API URL
+     * @param listener callback, fired when downloaded
+     * @param type     mediaobject type, movie / tv.
+     * @param policy   how long the response is cached
+     * @param priority priority from {@link SchedulerConfig}
+     * @see MediaObjectRequest
+     * @see CachePolicy
+     * @see RequestCoalescer
+     */
+    void fetchMediaObjects(final String url,
+                           final TmdbListener<ArrayList<MediaObject>> listener,
+                           final String type, CachePolicy policy, Request.Priority priority) {
+        // Type is part of the key, since it decides how the response is parsed
+        final String key = type + " " + url;
+        final boolean stored = policy != CachePolicy.ACCOUNT;
+
+        if (stored && listener instanceof CachedTmdbListener)
+            loadStoredPage(url, key, (CachedTmdbListener<ArrayList<MediaObject>>) listener);
+
+        if (!mediaObjectRequests.join(key, listener)) {
+            // The user waits for a prefetch in flight, it must not wait behind other prefetches
+            if (!(listener instanceof PrefetchTmdbListener))
+                promote(mediaObjectRequests.getRequest(key), priority);
+            return;
+        }
+
+        // Volley-request, parsed on a network thread
+        final MediaObjectRequest<ArrayList<MediaObject>> request = new MediaObjectRequest<>(
+                url, policy, new MediaObjectRequest.StreamParser<ArrayList<MediaObject>>() {
+            @Override
+            public ArrayList<MediaObject> parse(JsonReader reader) throws IOException {
+                return jsonParser.parseMediaObjects(reader, type);
+            }
+        }, new Response.Listener<ArrayList<MediaObject>>() {
 
             @Override
-            public void onResponse(JSONObject response) {
-                listener.onSuccess(jsonParser.parseMediaObjects(response, type));
+            public void onResponse(ArrayList<MediaObject> response) {
+                if (stored)
+                    repository.save(url, new ArrayList<>(response));
+                onDownloaded(url, response);
+                mediaObjectRequests.onSuccess(key, response);
             }
         }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                listener.onError(context.getString(R.string.error));
+                final String message = errorMessage(error);
+                if (!stored || !isUnreachable(error)) {
+                    mediaObjectRequests.onError(key, message);
+                    return;
+                }
+
+                // Falling back to the stored page
+                repository.load(url, new MediaRepository.PageCallback() {
+                    @Override
+                    public void onPage(ArrayList<MediaObject> page) {
+                        if (page != null)
+                            mediaObjectRequests.onSuccess(key, page);
+                        else
+                            mediaObjectRequests.onError(key, message);
+                    }
+                });
             }
         }
         );
-        queue.add(json);
+        request.setPriority((listener instanceof PrefetchTmdbListener)
+                ? SchedulerConfig.PREFETCH : priority);
+        RequestScope.tag(request, mediaObjectRequests.getListeners(key));
+        mediaObjectRequests.setRequest(key, request);
+        queue.add(request);
+    }
+
+    /**
+     * Sending a held prefetch at once, with the priority of the listener which joined it.
+     *
+     * @param request  request in flight, may be null
+     * @param priority priority from {@link SchedulerConfig}
+     * @see SchedulingRequestQueue#release(Request)
+     */
+    private void promote(Request<?> request, Request.Priority priority) {
+        if (!(request instanceof MediaObjectRequest) || !(queue instanceof SchedulingRequestQueue)
+                || priority == SchedulerConfig.PREFETCH)
+            return;
+
+        if (((SchedulingRequestQueue) queue).release(request)) {
+            ((MediaObjectRequest<?>) request).setPriority(priority);
+            queue.add(request);
+        }
+    }
+
+    /**
+     * Called when a page has been downloaded, before the listeners are fired.
+     * Does nothing by default.
+     *
+     * @param url  API URL
+     * @param page downloaded mediaobjects, must not be modified
+     */
+    void onDownloaded(String url, ArrayList<MediaObject> page) {
+    }
+
+    /**
+     * Giving the stored page to a listener, unless the download is already done.
+     *
+     * @param url      API URL
+     * @param key      key of the request in flight
+     * @param listener fired with the stored page
+     */
+    private void loadStoredPage(String url, final String key,
+                                final CachedTmdbListener<ArrayList<MediaObject>> listener) {
+        repository.load(url, new MediaRepository.PageCallback() {
+            @Override
+            public void onPage(ArrayList<MediaObject> page) {
+                if (page != null && mediaObjectRequests.isWaiting(key, listener))
+                    listener.onCached(page);
+            }
+        });
+    }
+
+    /**
+     * @return number of requests not sent, because an identical request was in flight
+     * @see RequestCoalescer#getSavedRequests()
+     */
+    int getSavedRequests() {
+        return mediaObjectRequests.getSavedRequests();
+    }
+
+    /**
+     * @param error error from Volley
+     * @return true if TMDB could not be reached, and a stored result may be shown instead
+     */
+    static boolean isUnreachable(VolleyError error) {
+        if (error instanceof NoConnectionError || error instanceof TimeoutError)
+            return true;
+
+        return error.networkResponse != null && error.networkResponse.statusCode >= 500;
+    }
+
+    /**
+     * Message shown to the user when a request fails.
+     *
+     * @param error error from Volley
+     * @return error message
+     */
+    String errorMessage(VolleyError error) {
+        if (error instanceof ParseError)
+            return context.getString(R.string.error_json);
+
+        return context.getString(R.string.error);
     }
 
 }
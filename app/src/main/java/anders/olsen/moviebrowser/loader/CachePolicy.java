@@ -0,0 +1,91 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache lifetime for responses from a group of TMDB endpoints.
+ * <p>
+ * While a response is younger than the soft ttl, it is served from the disk cache without
+ * touching the network. Between the soft ttl and the hard ttl the cached response is delivered
+ * at once, and revalidated in the background (stale-while-revalidate).
+ * When the hard ttl has passed, the request goes to the network. The ETag and Last-Modified
+ * headers from TMDB are kept in the cache entry, so the request is sent with If-None-Match /
+ * If-Modified-Since, and an unchanged page is answered with a 304, which renews the lifetime of
+ * the cached response, see {@link RevalidatingNetwork}.
+ * <p>
+ * Package-private, only used by the requests in the loader package.
+ *
+ * @author Anders Engen Olsen
+ * @see ParsedJsonRequest
+ * @see MediaObjectRequest
+ */
+final class CachePolicy {
+
+    /**
+     * Popular, top rated, upcoming, similar and genre lists.
+     */
+    static final CachePolicy LISTS = new CachePolicy(
+            TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(24));
+    /**
+     * Search results.
+     */
+    static final CachePolicy SEARCH = new CachePolicy(
+            TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1));
+    /**
+     * Genre lists, rarely changed at TMDB.
+     */
+    static final CachePolicy GENRES = new CachePolicy(
+            TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(30));
+    /**
+     * Details about a single mediaobject, e.g. trailers.
+     */
+    static final CachePolicy DETAILS = new CachePolicy(
+            TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(7));
+    /**
+     * The users own lists. Always revalidated, since the user can change them at any time.
+     */
+    static final CachePolicy ACCOUNT = new CachePolicy(0, 0);
+
+    /**
+     * Time in ms a response is served without revalidation
+     */
+    private final long softTtl;
+    /**
+     * Time in ms a response can be served at all
+     */
+    private final long ttl;
+
+    /**
+     * Constructor.
+     *
+     * @param softTtl ms before the response must be revalidated
+     * @param ttl     ms before the response is expired
+     */
+    private CachePolicy(long softTtl, long ttl) {
+        this.softTtl = softTtl;
+        this.ttl = Math.max(softTtl, ttl);
+    }
+
+    /**
+     * Creating a cache entry for a network response, with the lifetime of this policy.
+     *
+     * @param response response from TMDB
+     * @return cache entry, null if the server does not allow the response to be stored
+     */
+    Cache.Entry toCacheEntry(NetworkResponse response) {
+        Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+
+        if (entry == null)
+            return null;
+
+        long now = System.currentTimeMillis();
+        entry.softTtl = now + softTtl;
+        entry.ttl = now + ttl;
+
+        return entry;
+    }
+}
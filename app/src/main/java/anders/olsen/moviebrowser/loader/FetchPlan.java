@@ -0,0 +1,96 @@
+package anders.olsen.moviebrowser.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import anders.olsen.moviebrowser.listener.PrefetchTmdbListener;
+import anders.olsen.moviebrowser.listener.TmdbListener;
+
+/**
+ * Requests sent together when a screen with several tabs opens, the visible tab first.
+ * <p>
+ * Each tab adds a step to the plan. When the plan is run, the steps for the visible tab are
+ * started first, then the steps for the other tabs. All requests are in flight at once, so
+ * switching tab does not wait for a request to be sent. Steps for hidden tabs bind their
+ * listeners with {@link #bind(RequestScope, TmdbListener, boolean)}, which fetches them with
+ * prefetch priority, after the requests for the visible tab.
+ * <p>
+ * Must only be used on the main thread.
+ *
+ * @author Anders Engen Olsen
+ * @see SchedulerConfig#PREFETCH
+ */
+public class FetchPlan {
+
+    /**
+     * Starting the requests of a tab.
+     */
+    public interface Step {
+        /**
+         * @param visible true if the tab is visible, and the requests shall not wait
+         */
+        void fetch(boolean visible);
+    }
+
+    /**
+     * Steps for the visible tab, in the order added
+     */
+    private final List<Step> visibleSteps = new ArrayList<>();
+    /**
+     * Steps for the hidden tabs, in the order added
+     */
+    private final List<Step> hiddenSteps = new ArrayList<>();
+
+    /**
+     * @param step    step to add
+     * @param visible true if the step is for the visible tab
+     * @return this plan
+     */
+    public FetchPlan add(Step step, boolean visible) {
+        if (visible)
+            visibleSteps.add(step);
+        else
+            hiddenSteps.add(step);
+
+        return this;
+    }
+
+    /**
+     * Starting the steps, the visible tab first. The plan is empty afterwards.
+     */
+    public void run() {
+        for (Step step : visibleSteps)
+            step.fetch(true);
+        for (Step step : hiddenSteps)
+            step.fetch(false);
+
+        visibleSteps.clear();
+        hiddenSteps.clear();
+    }
+
+    /**
+     * Binding a listener to a scope, as a prefetch if not visible.
+     *
+     * @param scope    scope cancelling the listener
+     * @param listener listener to bind
+     * @param visible  true if the result is for the visible tab
+     * @return listener fired until the scope is cancelled
+     */
+    public static <T> TmdbListener<T> bind(RequestScope scope, final TmdbListener<T> listener,
+                                           boolean visible) {
+        if (visible)
+            return scope.bind(listener);
+
+        return scope.bind(new PrefetchTmdbListener<T>() {
+            @Override
+            public void onSuccess(T result) {
+                listener.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String result) {
+                listener.onError(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,309 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.model.Genre;
+import anders.olsen.moviebrowser.model.GenreDictionary;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_TV;
+
+/**
+ * Catalog of the movie and tv genres, kept in memory and stored in a small binary file.
+ * <p>
+ * Movie and tv genres are kept apart, since TMDB has a genre list for each. Each list is
+ * replaced as a whole when downloaded, and is refreshed when older than {@link #MAX_AGE}.
+ * Readers never lock, they always see either the old or the new list. The file is read the
+ * first time the catalog is used, and written on a background thread when a list is replaced.
+ * Every loaded or replaced list is published to the {@link GenreDictionary}, where
+ * mediaobjects find the names of their genre ids.
+ * <p>
+ * Genres were once stored in SharedPrefs, with movie and tv in one file. Those are deleted
+ * when no catalog file is found, and the genres are downloaded again.
+ * <p>
+ * Package-private, only loader-classes need access.
+ *
+ * @author Anders Engen Olsen
+ * @see JsonParser#parseGenres(org.json.JSONObject, String)
+ */
+class GenreCatalog {
+
+    private final static String LOG_TAG = GenreCatalog.class.getSimpleName();
+
+    /**
+     * File in the app files dir
+     */
+    private static final String FILE_NAME = "genres.bin";
+    /**
+     * Increased when the format is changed
+     */
+    private static final int VERSION = 1;
+    /**
+     * Age of a genre list before it is downloaded again
+     */
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+    /**
+     * SharedPrefs where genres were stored before the catalog
+     */
+    private static final String LEGACY_PREFS = "shared_pref_genres";
+    /**
+     * Max number of genres in a list, more means the file is corrupt
+     */
+    private static final int MAX_GENRES = 256;
+
+    /**
+     * Singleton
+     */
+    private static GenreCatalog catalog = null;
+
+    /**
+     * Context
+     */
+    private final Context context;
+    /**
+     * Background thread for writing. One thread, so the file is written in order.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Movie genres. Null until loaded from the file.
+     */
+    private volatile GenreList movieGenres;
+    /**
+     * Tv genres. Null until loaded from the file.
+     */
+    private volatile GenreList tvGenres;
+
+    /**
+     * Private constructor. Called from getInstance().
+     *
+     * @param context context
+     */
+    private GenreCatalog(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Initializing a GenreCatalog if null.
+     *
+     * @param context context
+     * @return Singleton object
+     */
+    static synchronized GenreCatalog getInstance(Context context) {
+        if (catalog == null)
+            catalog = new GenreCatalog(context.getApplicationContext());
+
+        return catalog;
+    }
+
+    /**
+     * @param type mediaobject type, movie / tv
+     * @return true if the genres are not downloaded, or older than MAX_AGE
+     */
+    boolean isStale(String type) {
+        GenreList list = getList(type);
+        return list.genres.isEmpty()
+                || System.currentTimeMillis() - list.fetchedAt > MAX_AGE;
+    }
+
+    /**
+     * @param type mediaobject type, movie / tv
+     * @return copy of the genres, in the order from TMDB. Empty if not downloaded
+     */
+    ArrayList<Genre> getGenres(String type) {
+        List<Genre> genres = getList(type).genres;
+        ArrayList<Genre> copy = new ArrayList<>(genres.size());
+
+        for (Genre genre : genres)
+            copy.add(new Genre(genre.getId(), genre.getGenre()));
+
+        return copy;
+    }
+
+    /**
+     * Replacing the genres of a type with downloaded genres, and storing the catalog.
+     * Called on a Volley network thread.
+     *
+     * @param type      mediaobject type, movie / tv
+     * @param genreList downloaded genres
+     */
+    synchronized void update(String type, List<Genre> genreList) {
+        ensureLoaded();
+
+        GenreList updated = new GenreList(genreList, System.currentTimeMillis());
+        if (MEDIA_TYPE_TV.equals(type))
+            tvGenres = updated;
+        else
+            movieGenres = updated;
+        publish();
+
+        final GenreList movies = movieGenres;
+        final GenreList tv = tvGenres;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(movies, tv);
+            }
+        });
+    }
+
+    /**
+     * @return the list of a type, loaded from the file if not yet loaded
+     */
+    private GenreList getList(String type) {
+        if (movieGenres == null)
+            ensureLoaded();
+
+        return MEDIA_TYPE_TV.equals(type) ? tvGenres : movieGenres;
+    }
+
+    /**
+     * Loading the catalog from the file, if not yet loaded.
+     */
+    private synchronized void ensureLoaded() {
+        if (movieGenres != null)
+            return;
+
+        GenreList[] lists = read();
+        tvGenres = lists[1];
+        movieGenres = lists[0];
+        publish();
+    }
+
+    /**
+     * Publishing the genre names to the GenreDictionary.
+     */
+    private void publish() {
+        GenreDictionary.publish(movieGenres.names, tvGenres.names);
+    }
+
+    /**
+     * Reading the file. Deleting the genres in SharedPrefs if there is no file.
+     *
+     * @return movie and tv genres, empty if the file is missing or can not be read
+     */
+    private GenreList[] read() {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() == VERSION)
+                return new GenreList[]{readList(in), readList(in)};
+        } catch (FileNotFoundException err) {
+            context.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE)
+                    .edit().clear().apply();
+        } catch (IOException err) {
+            Log.e(LOG_TAG, "Could not read genres", err);
+        } finally {
+            close(in);
+        }
+
+        return new GenreList[]{GenreList.EMPTY, GenreList.EMPTY};
+    }
+
+    /**
+     * Writing the file through a temp file, which replaces it.
+     */
+    private void write(GenreList movies, GenreList tv) {
+        File dir = context.getFilesDir();
+        File temp = new File(dir, FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(VERSION);
+            writeList(out, movies);
+            writeList(out, tv);
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(new File(dir, FILE_NAME)))
+                Log.e(LOG_TAG, "Could not replace genres");
+        } catch (IOException err) {
+            Log.e(LOG_TAG, "Could not write genres", err);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * List: time downloaded, count, then id and name of each genre.
+     */
+    private static void writeList(DataOutputStream out, GenreList list) throws IOException {
+        out.writeLong(list.fetchedAt);
+        out.writeInt(list.genres.size());
+
+        for (Genre genre : list.genres) {
+            out.writeInt(genre.getId());
+            out.writeUTF(genre.getGenre());
+        }
+    }
+
+    /**
+     * @see #writeList(DataOutputStream, GenreList)
+     */
+    private static GenreList readList(DataInputStream in) throws IOException {
+        long fetchedAt = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_GENRES)
+            throw new IOException("Invalid genre count " + count);
+
+        List<Genre> genres = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            genres.add(new Genre(in.readInt(), in.readUTF()));
+
+        return new GenreList(genres, fetchedAt);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        } catch (IOException err) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Genres of one type, never changed after it is created.
+     */
+    private static class GenreList {
+        private static final GenreList EMPTY = new GenreList(new ArrayList<Genre>(), 0);
+
+        private final List<Genre> genres;
+        private final SparseArray<String> names;
+        private final long fetchedAt;
+
+        private GenreList(List<Genre> genreList, long fetchedAt) {
+            this.genres = new ArrayList<>(genreList.size());
+            this.names = new SparseArray<>(genreList.size());
+            this.fetchedAt = fetchedAt;
+
+            for (Genre genre : genreList) {
+                String name = genre.getGenre().intern();
+                genres.add(new Genre(genre.getId(), name));
+                names.put(genre.getId(), name);
+            }
+        }
+    }
+}
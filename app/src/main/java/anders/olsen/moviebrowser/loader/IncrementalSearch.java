@@ -0,0 +1,105 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+import anders.olsen.moviebrowser.listener.CachedTmdbListener;
+import anders.olsen.moviebrowser.model.MediaObject;
+
+/**
+ * Search which is updated while the user types.
+ * <p>
+ * A query is searched when the user has stopped typing for {@link #DEBOUNCE_MS}, and the
+ * search for the previous query is cancelled. Until the results arrive, the listener is given
+ * the cached results of a shorter query, filtered by the typed query, at once.
+ * A query which is already cached is answered at once, without waiting.
+ * <p>
+ * Must only be used on the main thread.
+ *
+ * @author Anders Engen Olsen
+ * @see SearchService#newIncrementalSearch()
+ * @see SearchCache
+ */
+public class IncrementalSearch {
+
+    /**
+     * Time without typing before a query is searched
+     */
+    private static final long DEBOUNCE_MS = 300;
+
+    /**
+     * @see SearchService
+     */
+    private final SearchService service;
+    /**
+     * Search for the current query, cancelled when the query changes
+     */
+    private final RequestScope scope;
+    /**
+     * Posting the search when the user has stopped typing
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * Search waiting for the user to stop typing, null if none
+     */
+    private Runnable pending;
+
+    /**
+     * Constructor.
+     *
+     * @param service service searching TMDB
+     * @param scope   scope of the searches
+     */
+    IncrementalSearch(SearchService service, RequestScope scope) {
+        this.service = service;
+        this.scope = scope;
+    }
+
+    /**
+     * Searching for the typed query, replacing the previous one.
+     * The first page is given to the listener. onCached is fired with filtered results of a
+     * shorter query, if cached, and onSuccess with the results of the query.
+     *
+     * @param query    query typed by the user
+     * @param listener fired with the results
+     */
+    public void setQuery(String query, final CachedTmdbListener<ArrayList<MediaObject>> listener) {
+        cancel();
+
+        final String normalised = SearchCache.normalise(query);
+        if (normalised.isEmpty())
+            return;
+
+        if (service.isCached(normalised)) {
+            service.searchMoviesAndTV(normalised, 1, scope.bind(listener));
+            return;
+        }
+
+        ArrayList<MediaObject> filtered = service.filterCached(normalised);
+        if (filtered != null)
+            listener.onCached(filtered);
+
+        pending = new Runnable() {
+            @Override
+            public void run() {
+                pending = null;
+                service.searchMoviesAndTV(normalised, 1, scope.bind(listener));
+            }
+        };
+        handler.postDelayed(pending, DEBOUNCE_MS);
+    }
+
+    /**
+     * Cancelling the search for the current query, e.g. when it is submitted.
+     */
+    public void cancel() {
+        if (pending != null) {
+            handler.removeCallbacks(pending);
+            pending = null;
+        }
+
+        scope.cancel();
+    }
+}
@@ -1,185 +1,455 @@
 package anders.olsen.moviebrowser.loader;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.widget.Toast;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
 
-import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.model.AccountState;
 import anders.olsen.moviebrowser.model.Genre;
+import anders.olsen.moviebrowser.model.MediaDetails;
 import anders.olsen.moviebrowser.model.MediaObject;
 
-import static anders.olsen.moviebrowser.activities.BaseActivity.SHARED_PREF_GENRES;
+import static anders.olsen.moviebrowser.constants.JsonConstants.ACCOUNT_STATES;
+import static anders.olsen.moviebrowser.constants.JsonConstants.FAVORITE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.FIRST_AIR_DATE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.GENRES;
 import static anders.olsen.moviebrowser.constants.JsonConstants.GENRE_IDS;
 import static anders.olsen.moviebrowser.constants.JsonConstants.ID;
 import static anders.olsen.moviebrowser.constants.JsonConstants.JSON_RESULT;
+import static anders.olsen.moviebrowser.constants.JsonConstants.KEY;
 import static anders.olsen.moviebrowser.constants.JsonConstants.MEDIA_TYPE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.NAME;
 import static anders.olsen.moviebrowser.constants.JsonConstants.ORIGINAL_LANGUAGE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.OVERVIEW;
 import static anders.olsen.moviebrowser.constants.JsonConstants.POSTER_PATH;
+import static anders.olsen.moviebrowser.constants.JsonConstants.RATED;
 import static anders.olsen.moviebrowser.constants.JsonConstants.RELEASE_DATE;
+import static anders.olsen.moviebrowser.constants.JsonConstants.SIMILAR;
+import static anders.olsen.moviebrowser.constants.JsonConstants.SITE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.STATUS_CODE;
 import static anders.olsen.moviebrowser.constants.JsonConstants.STATUS_CODE_CREATED;
 import static anders.olsen.moviebrowser.constants.JsonConstants.STATUS_CODE_DELETED;
 import static anders.olsen.moviebrowser.constants.JsonConstants.STATUS_CODE_UPDATED;
 import static anders.olsen.moviebrowser.constants.JsonConstants.TITLE;
+import static anders.olsen.moviebrowser.constants.JsonConstants.TYPE;
+import static anders.olsen.moviebrowser.constants.JsonConstants.VALUE;
+import static anders.olsen.moviebrowser.constants.JsonConstants.VIDEOS;
 import static anders.olsen.moviebrowser.constants.JsonConstants.VOTE_AVERAGE;
+import static anders.olsen.moviebrowser.constants.JsonConstants.WATCHLIST;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_MOVIE;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.MEDIA_TYPE_TV;
 
 /**
  * Class which parse JSON-data from the TMDB API.
  * Package-protected, only loader-classes need access.
+ * <p>
+ * The parser is called from the requests, on Volley network threads, never on the main thread.
+ * Invalid JSON is reported by throwing, and reaches the listeners as a ParseError.
  *
  * @author Anders Engen Olsen
  * @see TmdbManager
  */
 class JsonParser {
 
-    private final static String LOG_TAG = JsonParser.class.getSimpleName();
-
     /**
-     * Activity context
+     * @see GenreCatalog
      */
-    private Context context;
+    private GenreCatalog genreCatalog;
 
     /**
      * Constructor.
      *
-     * @param context Activity context
+     * @param genreCatalog catalog updated when genres are downloaded
      */
-    JsonParser(Context context) {
-        this.context = context;
+    JsonParser(GenreCatalog genreCatalog) {
+        this.genreCatalog = genreCatalog;
     }
 
     /**
-     * Obtaining an ArrayList with MediaObjects from JSON.
+     * Obtaining an ArrayList with MediaObjects from a page of JSON.
      * <p>
+     * The JSON is read as a stream. Only the fields needed in a MediaObject are read,
+     * all other values are skipped.
      * The fields can vary between TV and MOVIES.
      *
-     * @param json json input
-     * @param type Type mediaobject, movie / tv. Null if not known
+     * @param reader reader positioned at the start of the page
+     * @param type   Type mediaobject, movie / tv. Null if not known
      * @return ArrayList<MediaObject>
+     * @throws IOException malformed JSON
+     * @see MediaObjectRequest
      */
-    ArrayList<MediaObject> parseMediaObjects(JSONObject json, String type) {
+    ArrayList<MediaObject> parseMediaObjects(JsonReader reader, String type) throws IOException {
+        ArrayList<MediaObject> mediaObjects = new ArrayList<>();
 
-        // Fields to fetch from JSON
-        int id;
-        String poster, rating, language, plot, title, releaseDate, mediaType;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals(JSON_RESULT)) {
+                reader.skipValue();
+                continue;
+            }
 
-        ArrayList<MediaObject> mediaObjects = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                MediaObject mediaObject = parseMediaObject(reader, type);
+                if (mediaObject != null)
+                    mediaObjects.add(mediaObject);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
 
-        // Map with genres from Shared Prefs
-        SharedPreferences prefs = context.getSharedPreferences(SHARED_PREF_GENRES,
-                Context.MODE_PRIVATE);
-        Map<String, ?> genreMap = prefs.getAll();
+        return mediaObjects;
+    }
 
-        try {
-            JSONArray jsonArr = json.getJSONArray(JSON_RESULT);
+    /**
+     * Obtaining the details of a movie or tv show, with the parts appended to the response:
+     * videos, similar and account states.
+     * The details contain genres as objects, not genre ids.
+     *
+     * @param reader reader positioned at the start of the details
+     * @param type   Type mediaobject, movie / tv
+     * @return MediaDetails, null if type is neither movie nor tv
+     * @throws IOException malformed JSON
+     * @see MediaObjectRequest
+     */
+    MediaDetails parseDetails(JsonReader reader, String type) throws IOException {
+        AppendedParts parts = new AppendedParts();
+        MediaObject mediaObject = parseMediaObject(reader, type, parts);
 
-            for (int i = 0; i < jsonArr.length(); i++) {
+        if (mediaObject == null)
+            return null;
 
-                JSONObject object = jsonArr.getJSONObject(i);
+        return new MediaDetails(mediaObject, parts.trailerId,
+                (parts.similar == null) ? new ArrayList<MediaObject>() : parts.similar,
+                parts.hasAccountStates, parts.favorite, parts.inWatchlist);
+    }
 
-                // If type is null, trying to fetch type from JSON
-                if (type == null) {
-                    mediaType = object.getString(MEDIA_TYPE);
-                } else {
-                    mediaType = type;
-                }
+    /**
+     * Reading a single MediaObject from JSON.
+     *
+     * @param reader reader positioned at the start of the object
+     * @param type   Type mediaobject, movie / tv. Null if not known
+     * @return MediaObject, null if the object is neither movie nor tv
+     * @throws IOException malformed JSON
+     */
+    private MediaObject parseMediaObject(JsonReader reader, String type) throws IOException {
+        return parseMediaObject(reader, type, null);
+    }
+
+    /**
+     * Reading a single MediaObject from JSON, and the parts appended to details.
+     *
+     * @param reader reader positioned at the start of the object
+     * @param type   Type mediaobject, movie / tv. Null if not known
+     * @param parts  filled with the appended parts, null to skip them
+     * @return MediaObject, null if the object is neither movie nor tv
+     * @throws IOException malformed JSON
+     */
+    private MediaObject parseMediaObject(JsonReader reader, String type, AppendedParts parts)
+            throws IOException {
+        int id = 0;
+        String poster = null, language = null, plot = null;
+        float rating = Float.NaN;
+        String title = null, name = null, releaseDate = null, firstAirDate = null;
+        String mediaType = type;
+        int[] genreIds = new int[0];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ID:
+                    id = reader.nextInt();
+                    break;
+                case POSTER_PATH:
+                    poster = nextString(reader);
+                    break;
+                case VOTE_AVERAGE:
+                    rating = nextFloat(reader);
+                    break;
+                case ORIGINAL_LANGUAGE:
+                    language = nextString(reader);
+                    break;
+                case OVERVIEW:
+                    plot = nextString(reader);
+                    break;
+                case TITLE:
+                    title = nextString(reader);
+                    break;
+                case NAME:
+                    name = nextString(reader);
+                    break;
+                case RELEASE_DATE:
+                    releaseDate = nextString(reader);
+                    break;
+                case FIRST_AIR_DATE:
+                    firstAirDate = nextString(reader);
+                    break;
+                case MEDIA_TYPE:
+                    // If type is null, trying to fetch type from JSON
+                    if (type == null)
+                        mediaType = nextString(reader);
+                    else
+                        reader.skipValue();
+                    break;
+                case GENRE_IDS:
+                    genreIds = nextIntArray(reader);
+                    break;
+                case GENRES:
+                    genreIds = nextGenreIds(reader);
+                    break;
+                case VIDEOS:
+                    if (parts != null && reader.peek() != JsonToken.NULL)
+                        parts.trailerId = nextTrailerId(reader);
+                    else
+                        reader.skipValue();
+                    break;
+                case SIMILAR:
+                    if (parts != null && reader.peek() != JsonToken.NULL)
+                        parts.similar = parseMediaObjects(reader, type);
+                    else
+                        reader.skipValue();
+                    break;
+                case ACCOUNT_STATES:
+                    if (parts != null && reader.peek() != JsonToken.NULL)
+                        nextAccountStates(reader, parts);
+                    else
+                        reader.skipValue();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Getting correct fields, whether movie / tv.
+        // Can also be company, person etc. Skipping if so.
+        if (MEDIA_TYPE_TV.equals(mediaType)) {
+            title = name;
+            releaseDate = firstAirDate;
+        } else if (!MEDIA_TYPE_MOVIE.equals(mediaType))
+            return null;
+
+        return new MediaObject.MediaObjectBuilder(id)
+                .imagePath(poster)
+                .rating(rating)
+                .language(language)
+                .handling(plot)
+                .releaseDate(releaseDate)
+                .title(title)
+                .genreIds(genreIds)
+                .type(mediaType)
+                .build();
+    }
+
+    /**
+     * Reading a string, number or null value.
+     *
+     * @param reader JsonReader
+     * @return the value as a String, null if JSON null
+     * @throws IOException malformed JSON
+     */
+    private String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Reading a number or null value.
+     *
+     * @param reader JsonReader
+     * @return the value as a float, NaN if JSON null
+     * @throws IOException malformed JSON
+     */
+    private float nextFloat(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return Float.NaN;
+        }
+        return (float) reader.nextDouble();
+    }
+
+    /**
+     * Reading an array of ints.
+     *
+     * @param reader JsonReader
+     * @return the ints in the array, empty if JSON null
+     * @throws IOException malformed JSON
+     */
+    private int[] nextIntArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return new int[0];
+        }
+
+        int[] values = new int[8];
+        int size = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = reader.nextInt();
+        }
+        reader.endArray();
+
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reading the ids from an array of genre objects, as in details.
+     *
+     * @param reader JsonReader
+     * @return the genre ids, empty if JSON null
+     * @throws IOException malformed JSON
+     */
+    private int[] nextGenreIds(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return new int[0];
+        }
 
-                // Getting correct fields, whether movie / tv.
-                // Can also be company, person etc. Skipping if so.
-                if (mediaType.equals(MEDIA_TYPE_MOVIE)) {
-                    releaseDate = object.getString(RELEASE_DATE);
-                    title = object.getString(TITLE);
-                } else if (mediaType.equals(MEDIA_TYPE_TV)) {
-                    releaseDate = object.getString(FIRST_AIR_DATE);
-                    title = object.getString(NAME);
+        int[] values = new int[8];
+        int size = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(ID)) {
+                    if (size == values.length)
+                        values = Arrays.copyOf(values, size * 2);
+                    values[size++] = reader.nextInt();
                 } else
-                    continue;
-
-                id = object.getInt(ID);
-                poster = object.getString(POSTER_PATH);
-                rating = object.getString(VOTE_AVERAGE);
-                language = object.getString(ORIGINAL_LANGUAGE);
-                plot = object.getString(OVERVIEW);
-
-                JSONArray genreArr = object.getJSONArray(GENRE_IDS);
-                String[] genres = new String[genreArr.length()];
-
-                // Genres
-                if (!genreMap.isEmpty()) {
-                    for (int n = 0; n < genreArr.length(); n++) {
-                        int genreId = genreArr.getInt(n);
-
-                        for (Map.Entry<String, ?> entry : genreMap.entrySet()) {
-                            if (genreId == Integer.parseInt(entry.getKey()))
-                                genres[n] = (String) entry.getValue();
-                        }
+                    reader.skipValue();
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reading the first YouTube trailer or teaser from appended videos.
+     *
+     * @param reader reader positioned at the start of the videos
+     * @return YouTube id, null if none
+     * @throws IOException malformed JSON
+     * @see #parseTrailerID(JSONObject)
+     */
+    private String nextTrailerId(JsonReader reader) throws IOException {
+        String trailerId = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals(JSON_RESULT)) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String site = null, videoType = null, key = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case SITE:
+                            site = nextString(reader);
+                            break;
+                        case TYPE:
+                            videoType = nextString(reader);
+                            break;
+                        case KEY:
+                            key = nextString(reader);
+                            break;
+                        default:
+                            reader.skipValue();
                     }
                 }
+                reader.endObject();
 
-                MediaObject movie = new MediaObject.MediaObjectBuilder(id)
-                        .imagePath(poster)
-                        .rating(rating)
-                        .language(language)
-                        .handling(plot)
-                        .releaseDate(releaseDate)
-                        .title(title)
-                        .genre(genres)
-                        .type(mediaType)
-                        .build();
-                mediaObjects.add(movie);
+                if (trailerId == null && isTrailer(site, videoType))
+                    trailerId = key;
             }
-        } catch (JSONException err) {
-            Toast.makeText(context, context.getString(R.string.error_json), Toast.LENGTH_SHORT).show();
+            reader.endArray();
         }
-        return mediaObjects;
+        reader.endObject();
+
+        return trailerId;
+    }
+
+    /**
+     * Reading favorite and watchlist from appended account states.
+     *
+     * @param reader reader positioned at the start of the account states
+     * @param parts  filled with the account states
+     * @throws IOException malformed JSON
+     */
+    private void nextAccountStates(JsonReader reader, AppendedParts parts) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FAVORITE:
+                    parts.favorite = reader.nextBoolean();
+                    break;
+                case WATCHLIST:
+                    parts.inWatchlist = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        parts.hasAccountStates = true;
+    }
+
+    /**
+     * @param site video site
+     * @param type video type
+     * @return true if a trailer or teaser on YouTube
+     */
+    private static boolean isTrailer(String site, String type) {
+        return "youtube".equalsIgnoreCase(site)
+                && ("trailer".equalsIgnoreCase(type) || "teaser".equalsIgnoreCase(type));
     }
 
     /**
      * Processing JSONobject which contains a list of genres.
-     * Genres are saved in SharedPrefs, and also returned as an ArrayList.
+     * Genres are saved in the GenreCatalog, and also returned as an ArrayList.
+     * <p>
+     * Called on a Volley network thread.
      *
      * @param json jsonobject with genres
+     * @param type mediaobject type of the genres, movie / tv
+     * @throws JSONException invalid json
      */
-    ArrayList<Genre> parseGenres(JSONObject json) {
-        // SharedPrefs
-        SharedPreferences sharedPreferences =
-                context.getSharedPreferences(SHARED_PREF_GENRES, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-
+    ArrayList<Genre> parseGenres(JSONObject json, String type) throws JSONException {
         // ArrayList
         ArrayList<Genre> genreList = new ArrayList<>();
 
-        try {
-            JSONArray jsonArr = json.getJSONArray(GENRES);
+        JSONArray jsonArr = json.getJSONArray(GENRES);
 
-            for (int i = 0; i < jsonArr.length(); i++) {
+        for (int i = 0; i < jsonArr.length(); i++) {
 
-                JSONObject object = jsonArr.getJSONObject(i);
+            JSONObject object = jsonArr.getJSONObject(i);
 
-                Genre genre = new Genre(object.getInt(ID), object.getString(NAME));
-                editor.putString(String.valueOf(genre.getId()), genre.getGenre());
-                genreList.add(genre);
-            }
-        } catch (JSONException err) {
-            Toast.makeText(context, context.getString(R.string.error_json), Toast.LENGTH_SHORT).show();
-        } finally {
-            editor.apply();
+            genreList.add(new Genre(object.getInt(ID), object.getString(NAME)));
         }
 
+        genreCatalog.update(type, genreList);
+
         return genreList;
     }
 
@@ -188,22 +458,14 @@ class JsonParser {
      *
      * @param json json with token
      * @return token, null if none found
+     * @throws JSONException invalid json
      */
-    String parseToken(JSONObject json) {
+    String parseToken(JSONObject json) throws JSONException {
         final String SUCCESS = "success";
         final String REQUEST_TOKEN = "request_token";
 
-        try {
-            boolean success = json.getBoolean(SUCCESS);
-
-            if (success) {
-                return json.getString(REQUEST_TOKEN);
-            }
-
-        } catch (JSONException err) {
-            Toast.makeText(context, context.getString(R.string.error_json),
-                    Toast.LENGTH_SHORT).show();
-        }
+        if (json.getBoolean(SUCCESS))
+            return json.getString(REQUEST_TOKEN);
 
         return null;
     }
@@ -213,25 +475,31 @@ class JsonParser {
      *
      * @param json json with session id
      * @return session id, null if none found
+     * @throws JSONException invalid json
      */
-    String parseSession(JSONObject json) {
+    String parseSession(JSONObject json) throws JSONException {
         final String SUCCESS = "success";
         final String SESSION_ID = "session_id";
 
-        try {
-            boolean success = json.getBoolean(SUCCESS);
-
-            if (success) {
-                return json.getString(SESSION_ID);
-            }
-
-        } catch (JSONException err) {
-            Toast.makeText(context, context.getString(R.string.error_json),
-                    Toast.LENGTH_SHORT).show();
-        }
+        if (json.getBoolean(SUCCESS))
+            return json.getString(SESSION_ID);
 
         return null;
+    }
 
+    /**
+     * Obtaining the account states of a mediaobject.
+     * Rated is false if not rated, otherwise an object with the rating.
+     *
+     * @param json json
+     * @return AccountState
+     * @throws JSONException invalid json
+     */
+    AccountState parseAccountState(JSONObject json) throws JSONException {
+        JSONObject rated = json.optJSONObject(RATED);
+        float rating = (rated == null) ? Float.NaN : (float) rated.getDouble(VALUE);
+
+        return new AccountState(json.getBoolean(FAVORITE), json.getBoolean(WATCHLIST), rating);
     }
 
     /**
@@ -239,48 +507,43 @@ class JsonParser {
      *
      * @param json json
      * @return true if valid response
+     * @throws JSONException invalid json
      */
-    boolean parseJsonResponse(JSONObject json) {
-        try {
-            return json.getInt(STATUS_CODE) == STATUS_CODE_UPDATED ||
-                    json.getInt(STATUS_CODE) == STATUS_CODE_CREATED ||
-                    json.getInt(STATUS_CODE) == STATUS_CODE_DELETED;
-        } catch (JSONException err) {
-            Toast.makeText(context, context.getString(R.string.error_json),
-                    Toast.LENGTH_SHORT).show();
-        }
+    boolean parseJsonResponse(JSONObject json) throws JSONException {
+        int statusCode = json.getInt(STATUS_CODE);
 
-        return false;
+        return statusCode == STATUS_CODE_UPDATED ||
+                statusCode == STATUS_CODE_CREATED ||
+                statusCode == STATUS_CODE_DELETED;
     }
 
     /**
      * Parsing JSON, extracting youtube-url to trailer.
      *
      * @param json json
-     * @return Url to trailer
-     * @throws NoSuchElementException trailer not found
+     * @return Url to trailer, null if not found
+     * @throws JSONException invalid json
      */
-    String parseTrailerID(JSONObject json) {
-
-        try {
-            JSONArray jsonArr = json.getJSONArray(JSON_RESULT);
-
-            for (int i = 0; i < jsonArr.length(); i++) {
-                JSONObject jsonObject = jsonArr.getJSONObject(i);
+    String parseTrailerID(JSONObject json) throws JSONException {
+        JSONArray jsonArr = json.getJSONArray(JSON_RESULT);
 
-                String site = jsonObject.getString("site");
-                String type = jsonObject.getString("type");
+        for (int i = 0; i < jsonArr.length(); i++) {
+            JSONObject jsonObject = jsonArr.getJSONObject(i);
 
-                if (site.equalsIgnoreCase("youtube")
-                        && (type.equalsIgnoreCase("trailer")
-                        || type.equalsIgnoreCase("teaser"))) {
-                    return jsonObject.getString("key");
-                }
-            }
-        } catch (JSONException err) {
-            Toast.makeText(context, R.string.trailer_not_found,
-                    Toast.LENGTH_SHORT).show();
+            if (isTrailer(jsonObject.getString(SITE), jsonObject.getString(TYPE)))
+                return jsonObject.getString(KEY);
         }
         return null;
     }
+
+    /**
+     * Parts appended to details, filled while the details are read.
+     */
+    private static class AppendedParts {
+        private String trailerId;
+        private ArrayList<MediaObject> similar;
+        private boolean hasAccountStates;
+        private boolean favorite;
+        private boolean inWatchlist;
+    }
 }
@@ -0,0 +1,148 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.util.JsonReader;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * GET request for a page with MediaObjects, or a single MediaObject.
+ * <p>
+ * The response bytes are parsed with a streaming JsonReader, straight into MediaObjects,
+ * without building a String or a JSONObject of the whole page first.
+ * The response is cached according to a {@link CachePolicy}.
+ *
+ * @param <T> parsed result, e.g. a page of MediaObjects
+ * @author Anders Engen Olsen
+ * @see JsonParser#parseMediaObjects(JsonReader, String)
+ * @see JsonParser#parseDetails(JsonReader, String)
+ */
+class MediaObjectRequest<T> extends Request<T> {
+
+    /**
+     * Reading the result from the response. Called on a Volley network thread.
+     *
+     * @param <T> parsed result
+     */
+    interface StreamParser<T> {
+
+        /**
+         * @param reader reader positioned at the start of the response
+         * @return parsed result
+         * @throws IOException malformed JSON
+         */
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * @see StreamParser
+     */
+    private final StreamParser<T> parser;
+    /**
+     * Lifetime of the cached response
+     */
+    private final CachePolicy policy;
+    /**
+     * Fired on response
+     */
+    private final Response.Listener<T> listener;
+    /**
+     * True when a response has been delivered to the listener
+     */
+    private boolean delivered;
+    /**
+     * Order in which waiting requests are sent
+     *
+     * @see SchedulerConfig
+     */
+    private Priority priority = Priority.NORMAL;
+
+    /**
+     * Constructor.
+     *
+     * @param url           url to fetch
+     * @param policy        {@link CachePolicy}
+     * @param parser        {@link StreamParser}
+     * @param listener      fired on response
+     * @param errorListener fired on error
+     */
+    MediaObjectRequest(String url, CachePolicy policy, StreamParser<T> parser,
+                       Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.policy = policy;
+        this.parser = parser;
+        this.listener = listener;
+    }
+
+    /**
+     * Setting the priority, before the request is added to the queue.
+     *
+     * @param priority priority from {@link SchedulerConfig}
+     * @return this request
+     */
+    MediaObjectRequest<T> setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return lifetime of the cached response
+     * @see RevalidatingNetwork
+     */
+    CachePolicy getCachePolicy() {
+        return policy;
+    }
+
+    /**
+     * Parsing the response bytes. Called on a Volley network thread.
+     */
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        JsonReader reader = null;
+
+        try {
+            reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(response.data),
+                    HttpHeaderParser.parseCharset(response.headers, "utf-8")));
+
+            T result = parser.parse(reader);
+
+            return Response.success(result, policy.toCacheEntry(response));
+        } catch (IOException | IllegalStateException | NumberFormatException err) {
+            return Response.error(new ParseError(err));
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivering the first response only.
+     *
+     * @see ParsedJsonRequest#deliverResponse(Object)
+     */
+    @Override
+    protected void deliverResponse(T response) {
+        if (delivered)
+            return;
+
+        delivered = true;
+        listener.onResponse(response);
+    }
+}
@@ -0,0 +1,194 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.database.MediaObjectStore;
+import anders.olsen.moviebrowser.model.MediaObject;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_API_KEY;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_PAGE;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_SESSION_ID;
+
+/**
+ * Repository for pages of mediaobjects, stored on the device in a {@link MediaObjectStore}.
+ * <p>
+ * Every page downloaded through {@link BaseService} is saved, keyed by the url without api key,
+ * session id and page number, and the page number. Stored pages are shown while the fresh page is
+ * downloaded, and instead of an error when TMDB can not be reached.
+ * Pages older than {@link #MAX_AGE}, and the oldest pages beyond {@link #MAX_PAGES},
+ * are deleted when the repository is created.
+ * <p>
+ * The database is only used on a background thread, callbacks are fired on the main thread.
+ * Package-private, only services in the loader package need access.
+ *
+ * @author Anders Engen Olsen
+ * @see BaseService#fetchMediaObjects(String, anders.olsen.moviebrowser.listener.TmdbListener,
+ * String, CachePolicy, com.android.volley.Request.Priority)
+ */
+class MediaRepository {
+
+    private final static String LOG_TAG = MediaRepository.class.getSimpleName();
+
+    /**
+     * Max age of a stored page
+     */
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+    /**
+     * Max number of stored pages
+     */
+    private static final int MAX_PAGES = 200;
+
+    /**
+     * Fired on the main thread when a stored page has been read.
+     */
+    interface PageCallback {
+
+        /**
+         * @param page mediaobjects on the page, null if not stored
+         */
+        void onPage(ArrayList<MediaObject> page);
+    }
+
+    /**
+     * Singleton
+     */
+    private static MediaRepository repository = null;
+
+    /**
+     * @see MediaObjectStore
+     */
+    private final MediaObjectStore store;
+    /**
+     * Background thread for database IO. One thread, so pages are written in order.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Firing callbacks on the main thread
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Private constructor. Called from getInstance().
+     *
+     * @param context context
+     */
+    private MediaRepository(Context context) {
+        store = new MediaObjectStore(context);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.prune(MAX_AGE, MAX_PAGES);
+                } catch (SQLException err) {
+                    Log.e(LOG_TAG, "Could not prune stored pages", err);
+                }
+            }
+        });
+    }
+
+    /**
+     * Initializing a MediaRepository if null.
+     *
+     * @param context context
+     * @return Singleton object
+     */
+    static synchronized MediaRepository getInstance(Context context) {
+        if (repository == null)
+            repository = new MediaRepository(context.getApplicationContext());
+
+        return repository;
+    }
+
+    /**
+     * Reading the stored page for an url.
+     *
+     * @param url      API URL
+     * @param callback fired on the main thread
+     */
+    void load(String url, final PageCallback callback) {
+        final Uri uri = Uri.parse(url);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<MediaObject> stored = null;
+                try {
+                    stored = store.getPage(endpoint(uri), page(uri));
+                } catch (SQLException err) {
+                    Log.e(LOG_TAG, "Could not read stored page", err);
+                }
+
+                final ArrayList<MediaObject> page = stored;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPage(page);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Storing a downloaded page, replacing the stored page for the url.
+     *
+     * @param url   API URL
+     * @param items mediaobjects on the page. Must not be modified after the call
+     */
+    void save(String url, final ArrayList<MediaObject> items) {
+        final Uri uri = Uri.parse(url);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.putPage(endpoint(uri), page(uri), items);
+                } catch (SQLException err) {
+                    Log.e(LOG_TAG, "Could not store page", err);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param uri API URL
+     * @return the url without api key, session id and page number
+     */
+    private static String endpoint(Uri uri) {
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+
+        for (String name : uri.getQueryParameterNames()) {
+            if (name.equals(PARAM_API_KEY) || name.equals(PARAM_SESSION_ID)
+                    || name.equals(PARAM_PAGE))
+                continue;
+            for (String value : uri.getQueryParameters(name))
+                builder.appendQueryParameter(name, value);
+        }
+
+        return builder.build().toString();
+    }
+
+    /**
+     * @param uri API URL
+     * @return page number in the url, 1 if none
+     */
+    private static int page(Uri uri) {
+        try {
+            String page = uri.getQueryParameter(PARAM_PAGE);
+            return (page == null) ? 1 : Integer.parseInt(page);
+        } catch (NumberFormatException err) {
+            return 1;
+        }
+    }
+}
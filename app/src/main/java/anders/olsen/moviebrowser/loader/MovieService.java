@@ -9,6 +9,7 @@ import java.util.ArrayList;
 
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.model.Genre;
+import anders.olsen.moviebrowser.model.MediaDetails;
 import anders.olsen.moviebrowser.model.MediaObject;
 
 import static anders.olsen.moviebrowser.constants.TmdbConstants.API_BASE_URL;
@@ -39,8 +40,9 @@ import static anders.olsen.moviebrowser.constants.TmdbConstants.URL_VIDEOS;
  */
 public class MovieService extends BaseMovieTvService {
 
-    MovieService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
-        super(context, queue, jsonParser, apiKey);
+    MovieService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey,
+                 MutationQueue mutations) {
+        super(context, queue, jsonParser, apiKey, mutations);
     }
 
     /**
@@ -143,7 +145,19 @@ public class MovieService extends BaseMovieTvService {
                 .appendQueryParameter(PARAM_API_KEY, apiKey)
                 .build();
 
-        fetchMediaGenres(uri.toString(), listener);
+        fetchMediaGenres(uri.toString(), MEDIA_TYPE_MOVIE, listener);
+    }
+
+    /**
+     * Fetching a single movie, with trailer, similar and account states.
+     *
+     * @param id       mediaobject id
+     * @param listener fired when downloaded
+     * @see #fetchDetails(String, String, TmdbListener)
+     */
+    @Override
+    public void getDetails(int id, TmdbListener<MediaDetails> listener) {
+        fetchDetails(API_BASE_URL + URL_MOVIE + id, MEDIA_TYPE_MOVIE, listener);
     }
 
     /**
@@ -0,0 +1,599 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.R;
+import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.model.AccountState;
+import anders.olsen.moviebrowser.model.MediaDetails;
+import anders.olsen.moviebrowser.model.MediaObject;
+
+import static anders.olsen.moviebrowser.constants.JsonConstants.VALUE;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.API_BASE_URL;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.BASE_URL_ACCOUNT;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.FAVORITE;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.JSON_MEDIA_ID;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.JSON_MEDIA_TYPE;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_API_KEY;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_SESSION_ID;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.RATING;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_MUTATIONS;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.WATCHLIST;
+
+/**
+ * Durable queue of changes to the users lists and ratings, posted to TMDB in order.
+ * <p>
+ * Every change is written to SharedPrefs before it is posted, and removed when TMDB has
+ * accepted or rejected it. Changes left when the app is closed are posted the next time.
+ * A change replaces a waiting change to the same list and mediaobject, so toggling a
+ * button several times posts once. A toggle which undoes the waiting change posts nothing.
+ * <p>
+ * When TMDB can not be reached, or answers with a server error, the change is posted again
+ * after an exponential backoff, and at once when a network becomes available.
+ * The listener of a change is fired once: when TMDB has accepted or rejected it, or when
+ * it is saved for later. Changes rejected later are reported to {@link OnRejectedListener}.
+ * <p>
+ * Must only be used on the main thread, where Volley delivers responses.
+ * Package-private, created by {@link TmdbManager} and shared by the services.
+ *
+ * @author Anders Engen Olsen
+ * @see AccountService
+ */
+class MutationQueue {
+
+    /**
+     * Fired when TMDB rejects a change, e.g. the session is no longer valid.
+     */
+    interface OnRejectedListener {
+        void onRejected(String type, int id, String list);
+    }
+
+    private final static String LOG_TAG = MutationQueue.class.getSimpleName();
+
+    /**
+     * Delay before the first retry, doubled for every failed attempt
+     */
+    private static final long BASE_DELAY = TimeUnit.SECONDS.toMillis(2);
+    /**
+     * Max delay between retries
+     */
+    private static final long MAX_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Keys in the JSON stored for a change
+     */
+    private static final String KEY_SEQUENCE = "sequence";
+    private static final String KEY_SESSION = "session";
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_ID = "id";
+    private static final String KEY_LIST = "list";
+    private static final String KEY_MEMBER = "member";
+    private static final String KEY_BASE = "base";
+    private static final String KEY_RATING = "rating";
+
+    private final Context context;
+    private final RequestQueue queue;
+    private final JsonParser jsonParser;
+    private final String apiKey;
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * Changes waiting to be posted by list and mediaobject, in order
+     */
+    private final LinkedHashMap<String, Mutation> waiting = new LinkedHashMap<>();
+    /**
+     * Change being posted, or waiting for a retry
+     */
+    private Mutation head;
+    /**
+     * True while head is posted
+     */
+    private boolean posting;
+    /**
+     * True while a retry is scheduled
+     */
+    private boolean retryScheduled;
+    /**
+     * Failed attempts to post head
+     */
+    private int attempts;
+    /**
+     * Sequence number of the next change
+     */
+    private long nextSequence;
+    /**
+     * @see OnRejectedListener
+     */
+    private OnRejectedListener onRejectedListener;
+
+    /**
+     * Posting head again, after the backoff.
+     */
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            retryScheduled = false;
+            post();
+        }
+    };
+
+    /**
+     * Constructor. Reading changes saved in SharedPrefs, and posting them.
+     *
+     * @param context    context
+     * @param queue      RequestQueue
+     * @param jsonParser JsonParser
+     * @param apiKey     API-key to TMDB
+     */
+    MutationQueue(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
+        this.context = context.getApplicationContext();
+        this.queue = queue;
+        this.jsonParser = jsonParser;
+        this.apiKey = apiKey;
+        prefs = this.context.getSharedPreferences(SHARED_PREF_MUTATIONS, Context.MODE_PRIVATE);
+
+        restore();
+        listenForNetwork();
+        post();
+    }
+
+    /**
+     * @param listener fired when TMDB rejects a change
+     */
+    void setOnRejectedListener(OnRejectedListener listener) {
+        onRejectedListener = listener;
+    }
+
+    /**
+     * Adding or removing a mediaobject in a list.
+     *
+     * @param session  session id of the user
+     * @param type     movie / tv
+     * @param id       mediaobject id
+     * @param list     favorite / watchlist
+     * @param member   true if added, false if removed
+     * @param listener fired when done, or saved for later
+     */
+    void setInList(String session, String type, int id, String list, boolean member,
+                   TmdbListener<String> listener) {
+        enqueue(new Mutation(nextSequence++, session, type, id, list, member, 0), listener);
+    }
+
+    /**
+     * Rating a mediaobject.
+     *
+     * @param session  session id of the user
+     * @param type     movie / tv
+     * @param id       mediaobject id
+     * @param rating   the rating
+     * @param listener fired when done, or saved for later
+     */
+    void setRating(String session, String type, int id, float rating,
+                   TmdbListener<String> listener) {
+        enqueue(new Mutation(nextSequence++, session, type, id, RATING, false, rating), listener);
+    }
+
+    /**
+     * Finding a change not yet accepted by TMDB, so it can be shown before it is.
+     *
+     * @param type movie / tv
+     * @param id   mediaobject id
+     * @param list favorite / watchlist / rating
+     * @return the latest change, null if none
+     */
+    Mutation findPending(String type, int id, String list) {
+        String key = Mutation.key(type, id, list);
+        Mutation mutation = waiting.get(key);
+
+        if (mutation == null && head != null && head.key().equals(key))
+            mutation = head;
+        return mutation;
+    }
+
+    /**
+     * Applying changes not yet accepted by TMDB to a fetched account state.
+     *
+     * @param mo    mediaobject
+     * @param state account state from TMDB
+     * @return account state as it will be when the changes are posted
+     */
+    AccountState withPending(MediaObject mo, AccountState state) {
+        Mutation favorite = findPending(mo.getType(), mo.getId(), FAVORITE);
+        Mutation watchlist = findPending(mo.getType(), mo.getId(), WATCHLIST);
+        Mutation rating = findPending(mo.getType(), mo.getId(), RATING);
+
+        if (favorite != null)
+            state = state.withFavorite(favorite.isMember());
+        if (watchlist != null)
+            state = state.withWatchlist(watchlist.isMember());
+        if (rating != null)
+            state = state.withRating(rating.getRating());
+        return state;
+    }
+
+    /**
+     * Applying changes not yet accepted by TMDB to the account states appended to details.
+     *
+     * @param details details from TMDB
+     * @return details with the account states as they will be when the changes are posted
+     */
+    MediaDetails withPending(MediaDetails details) {
+        if (!details.hasAccountStates())
+            return details;
+
+        MediaObject mo = details.getMediaObject();
+        AccountState state = withPending(mo,
+                new AccountState(details.isFavorite(), details.isInWatchlist(), Float.NaN));
+
+        return new MediaDetails(mo, details.getTrailerId(), details.getSimilar(), true,
+                state.isFavorite(), state.isInWatchlist());
+    }
+
+    /**
+     * Replacing a waiting change to the same list and mediaobject, and saving the change.
+     *
+     * @param mutation the change
+     * @param listener fired when done, or saved for later
+     */
+    private void enqueue(Mutation mutation, TmdbListener<String> listener) {
+        String key = mutation.key();
+        Mutation replaced = waiting.remove(key);
+
+        if (replaced == null && head != null && !posting && head.key().equals(key)) {
+            replaced = head;
+            head = null;
+            attempts = 0;
+        }
+
+        if (replaced != null) {
+            mutation.base = replaced.base;
+            remove(replaced);
+            release(replaced, context.getString(R.string.done));
+        } else if (head != null && head.key().equals(key)) {
+            // The list will be as head when head is posted
+            mutation.base = head.member;
+        } else
+            mutation.base = !mutation.member;
+
+        // Undoing a change which was never posted
+        if (mutation.isList() && mutation.member == mutation.base) {
+            listener.onSuccess(context.getString(R.string.done));
+            return;
+        }
+
+        mutation.listener = listener;
+        waiting.put(key, mutation);
+        store(mutation);
+        post();
+    }
+
+    /**
+     * Posting head, or the first waiting change, unless posting or waiting for a retry.
+     */
+    private void post() {
+        if (posting || retryScheduled)
+            return;
+
+        if (head == null) {
+            if (waiting.isEmpty())
+                return;
+
+            String first = waiting.keySet().iterator().next();
+            head = waiting.remove(first);
+        }
+
+        final Mutation mutation = head;
+        posting = true;
+
+        ParsedJsonRequest<Boolean> request = new ParsedJsonRequest<>(Request.Method.POST,
+                mutation.uri(apiKey), mutation.body(), new ParsedJsonRequest.Parser<Boolean>() {
+            @Override
+            public Boolean parse(JSONObject json) throws JSONException {
+                return jsonParser.parseJsonResponse(json);
+            }
+        }, new Response.Listener<Boolean>() {
+            @Override
+            public void onResponse(Boolean success) {
+                if (success)
+                    onAccepted(mutation);
+                else
+                    onRejected(mutation);
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                if (isTemporary(error))
+                    onFailed(mutation);
+                else
+                    onRejected(mutation);
+            }
+        });
+        request.setPriority(SchedulerConfig.SYNC);
+        queue.add(request);
+    }
+
+    /**
+     * TMDB accepted the change.
+     */
+    private void onAccepted(Mutation mutation) {
+        remove(mutation);
+        release(mutation, context.getString(R.string.done));
+        next();
+    }
+
+    /**
+     * TMDB rejected the change, it is dropped.
+     */
+    private void onRejected(Mutation mutation) {
+        remove(mutation);
+
+        TmdbListener<String> listener = mutation.listener;
+        mutation.listener = null;
+        if (listener != null)
+            listener.onError(context.getString(mutation.isList()
+                    ? R.string.error_adding_list : R.string.error_rating));
+
+        if (onRejectedListener != null)
+            onRejectedListener.onRejected(mutation.type, mutation.id, mutation.list);
+        next();
+    }
+
+    /**
+     * TMDB could not be reached, the change is posted again after a backoff.
+     */
+    private void onFailed(Mutation mutation) {
+        posting = false;
+        release(mutation, context.getString(R.string.saved_offline));
+
+        long delay = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempts, 16));
+        attempts++;
+        retryScheduled = true;
+        handler.postDelayed(retry, delay);
+    }
+
+    /**
+     * Posting the next change.
+     */
+    private void next() {
+        head = null;
+        posting = false;
+        attempts = 0;
+        post();
+    }
+
+    /**
+     * Firing the listener of a change, which is then released.
+     */
+    private static void release(Mutation mutation, String message) {
+        TmdbListener<String> listener = mutation.listener;
+        mutation.listener = null;
+        if (listener != null)
+            listener.onSuccess(message);
+    }
+
+    /**
+     * @param error error from Volley
+     * @return true if TMDB could not be reached, or had a server error
+     */
+    private static boolean isTemporary(VolleyError error) {
+        if (error.networkResponse == null)
+            return true;
+
+        int status = error.networkResponse.statusCode;
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * Retrying at once when a network becomes available.
+     */
+    private void listenForNetwork() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null)
+            return;
+
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+
+        connectivityManager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                // Called on a ConnectivityManager thread
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!retryScheduled)
+                            return;
+
+                        handler.removeCallbacks(retry);
+                        retryScheduled = false;
+                        attempts = 0;
+                        post();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Writing a change to SharedPrefs.
+     */
+    private void store(Mutation mutation) {
+        try {
+            prefs.edit().putString(String.valueOf(mutation.sequence), mutation.toJson().toString())
+                    .apply();
+        } catch (JSONException err) {
+            Log.e(LOG_TAG, "Unable to store change", err);
+        }
+    }
+
+    /**
+     * Removing a change from SharedPrefs.
+     */
+    private void remove(Mutation mutation) {
+        prefs.edit().remove(String.valueOf(mutation.sequence)).apply();
+    }
+
+    /**
+     * Reading the changes in SharedPrefs, in order.
+     * A change replaced by a later one is removed.
+     */
+    private void restore() {
+        List<Mutation> saved = new ArrayList<>();
+
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            try {
+                saved.add(Mutation.fromJson(new JSONObject(String.valueOf(entry.getValue()))));
+            } catch (JSONException err) {
+                prefs.edit().remove(entry.getKey()).apply();
+            }
+        }
+
+        Collections.sort(saved, new Comparator<Mutation>() {
+            @Override
+            public int compare(Mutation a, Mutation b) {
+                return Long.compare(a.sequence, b.sequence);
+            }
+        });
+
+        for (Mutation mutation : saved) {
+            Mutation replaced = waiting.put(mutation.key(), mutation);
+            if (replaced != null)
+                remove(replaced);
+            nextSequence = mutation.sequence + 1;
+        }
+    }
+
+    /**
+     * A change to a list or a rating.
+     */
+    static class Mutation {
+        private final long sequence;
+        private final String session;
+        private final String type;
+        private final int id;
+        private final String list;
+        private final boolean member;
+        private final float rating;
+        /**
+         * Membership before the first of the changes this one replaced
+         */
+        private boolean base;
+        /**
+         * Fired once, null when fired
+         */
+        private TmdbListener<String> listener;
+
+        private Mutation(long sequence, String session, String type, int id, String list,
+                         boolean member, float rating) {
+            this.sequence = sequence;
+            this.session = session;
+            this.type = type;
+            this.id = id;
+            this.list = list;
+            this.member = member;
+            this.rating = rating;
+        }
+
+        /**
+         * @return true if added or removed in a list, false if rated
+         */
+        boolean isList() {
+            return !RATING.equals(list);
+        }
+
+        /**
+         * @return true if added to the list
+         */
+        boolean isMember() {
+            return member;
+        }
+
+        /**
+         * @return the rating, if rated
+         */
+        float getRating() {
+            return rating;
+        }
+
+        private String key() {
+            return key(type, id, list);
+        }
+
+        private static String key(String type, int id, String list) {
+            return type + "/" + id + "/" + list;
+        }
+
+        private String uri(String apiKey) {
+            String url = isList() ? BASE_URL_ACCOUNT + list
+                    : API_BASE_URL + type + "/" + id + "/" + RATING;
+
+            return Uri.parse(url).buildUpon()
+                    .appendQueryParameter(PARAM_API_KEY, apiKey)
+                    .appendQueryParameter(PARAM_SESSION_ID, session)
+                    .build().toString();
+        }
+
+        private JSONObject body() {
+            JSONObject json = new JSONObject();
+            try {
+                if (isList()) {
+                    json.put(JSON_MEDIA_TYPE, type);
+                    json.put(JSON_MEDIA_ID, id);
+                    json.put(list, member);
+                } else
+                    json.put(VALUE, rating);
+            } catch (JSONException err) {
+                Log.e(LOG_TAG, "Unable to create body", err);
+            }
+            return json;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put(KEY_SEQUENCE, sequence);
+            json.put(KEY_SESSION, session);
+            json.put(KEY_TYPE, type);
+            json.put(KEY_ID, id);
+            json.put(KEY_LIST, list);
+            json.put(KEY_MEMBER, member);
+            json.put(KEY_BASE, base);
+            json.put(KEY_RATING, (double) rating);
+            return json;
+        }
+
+        private static Mutation fromJson(JSONObject json) throws JSONException {
+            Mutation mutation = new Mutation(json.getLong(KEY_SEQUENCE), json.getString(KEY_SESSION),
+                    json.getString(KEY_TYPE), json.getInt(KEY_ID), json.getString(KEY_LIST),
+                    json.getBoolean(KEY_MEMBER), (float) json.getDouble(KEY_RATING));
+            mutation.base = json.getBoolean(KEY_BASE);
+            return mutation;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package anders.olsen.moviebrowser.loader;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.model.MediaObject;
+import anders.olsen.moviebrowser.model.MediaPages;
+
+/**
+ * Loading several pages at once, e.g. enough to fill a large screen.
+ * <p>
+ * All pages are requested at the same time, instead of one round trip after the other.
+ * When all have arrived, they are merged in page order, a mediaobject which moved to the next
+ * page while the pages were loaded is only kept once, and the listener is fired once.
+ * If a page fails, the pages before it are returned, with the number of pages returned, so the
+ * caller continues from the failed page. onError is only fired if the first fails.
+ * The page requests are cancelled with the listener, see {@link RequestScope}.
+ * <p>
+ * Must only be used on the main thread, where Volley delivers responses.
+ * Package-private, only used by the services.
+ *
+ * @author Anders Engen Olsen
+ * @see BaseMovieTvService#getTopRated(int, int, TmdbListener)
+ */
+class PageBatch {
+
+    /**
+     * Fetching a single page.
+     */
+    interface PageFetcher {
+        void fetch(int page, TmdbListener<ArrayList<MediaObject>> listener);
+    }
+
+    /**
+     * Pages by index in the batch, null until arrived or if failed
+     */
+    private final ArrayList<MediaObject>[] pages;
+    /**
+     * Fired once, when all pages are done
+     */
+    private final TmdbListener<MediaPages> listener;
+    /**
+     * Number of pages not done yet
+     */
+    private int remaining;
+    /**
+     * Error of the first page, null if it arrived
+     */
+    private String firstError;
+
+    /**
+     * Constructor.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private PageBatch(int pageCount, TmdbListener<MediaPages> listener) {
+        this.pages = new ArrayList[pageCount];
+        this.listener = listener;
+        this.remaining = pageCount;
+    }
+
+    /**
+     * Requesting the pages firstPage to firstPage + pageCount - 1 at once.
+     *
+     * @param firstPage first page in api
+     * @param pageCount number of pages, at least 1
+     * @param fetcher   fetching a single page
+     * @param listener  fired once with the merged pages
+     */
+    static void fetch(int firstPage, int pageCount, PageFetcher fetcher,
+                      TmdbListener<MediaPages> listener) {
+        PageBatch batch = new PageBatch(Math.max(1, pageCount), listener);
+
+        for (int i = 0; i < batch.pages.length; i++)
+            fetcher.fetch(firstPage + i, RequestScope.follow(listener, batch.pageListener(i)));
+    }
+
+    /**
+     * @param index index of the page in the batch
+     * @return listener storing the page
+     */
+    private TmdbListener<ArrayList<MediaObject>> pageListener(final int index) {
+        return new TmdbListener<ArrayList<MediaObject>>() {
+            @Override
+            public void onSuccess(ArrayList<MediaObject> result) {
+                pages[index] = result;
+                done();
+            }
+
+            @Override
+            public void onError(String result) {
+                if (index == 0)
+                    firstError = result;
+                done();
+            }
+        };
+    }
+
+    /**
+     * Firing the listener when the last page is done.
+     */
+    private void done() {
+        if (--remaining > 0)
+            return;
+
+        if (pages[0] == null) {
+            listener.onError(firstError);
+            return;
+        }
+
+        // Mediaobjects are equal by type and id, the first occurrence is kept
+        LinkedHashSet<MediaObject> merged = new LinkedHashSet<>();
+        int delivered = 0;
+        for (ArrayList<MediaObject> page : pages) {
+            if (page == null)
+                break;
+            merged.addAll(page);
+            delivered++;
+        }
+
+        listener.onSuccess(new MediaPages(new ArrayList<>(merged), delivered, pages[0].size()));
+    }
+}
@@ -0,0 +1,151 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.JsonRequest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Request for JSON, which is converted to a result with a {@link Parser} before it is delivered.
+ * <p>
+ * Parsing is done in parseNetworkResponse, on a Volley network thread,
+ * so the listener receives a ready result on the main thread.
+ * GET requests are cached according to a {@link CachePolicy}. When a stale response is served
+ * from the cache, the fresh copy from the network is only written to the cache,
+ * the listener is fired once.
+ *
+ * @param <T> parsed result
+ * @author Anders Engen Olsen
+ * @see JsonParser
+ */
+class ParsedJsonRequest<T> extends JsonRequest<T> {
+
+    /**
+     * Converting JSON to a result. Called on a Volley network thread.
+     *
+     * @param <T> parsed result
+     */
+    interface Parser<T> {
+
+        /**
+         * @param json json from TMDB
+         * @return parsed result
+         * @throws JSONException invalid json
+         */
+        T parse(JSONObject json) throws JSONException;
+    }
+
+    /**
+     * @see Parser
+     */
+    private final Parser<T> parser;
+    /**
+     * Lifetime of the cached response, null if not cached
+     */
+    private final CachePolicy policy;
+    /**
+     * True when a response has been delivered to the listener
+     */
+    private boolean delivered;
+    /**
+     * Order in which waiting requests are sent
+     *
+     * @see SchedulerConfig
+     */
+    private Priority priority = Priority.NORMAL;
+
+    /**
+     * Constructor, cached GET request.
+     *
+     * @param url           url to fetch
+     * @param policy        {@link CachePolicy}
+     * @param parser        {@link Parser}
+     * @param listener      fired on response
+     * @param errorListener fired on error
+     */
+    ParsedJsonRequest(String url, CachePolicy policy, Parser<T> parser,
+                      Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        super(Method.GET, url, null, listener, errorListener);
+        this.parser = parser;
+        this.policy = policy;
+    }
+
+    /**
+     * Constructor, request which is never cached.
+     *
+     * @param method        Request.Method
+     * @param url           url
+     * @param body          json to post, may be null
+     * @param parser        {@link Parser}
+     * @param listener      fired on response
+     * @param errorListener fired on error
+     */
+    ParsedJsonRequest(int method, String url, JSONObject body, Parser<T> parser,
+                      Response.Listener<T> listener, Response.ErrorListener errorListener) {
+        super(method, url, (body == null) ? null : body.toString(), listener, errorListener);
+        this.parser = parser;
+        this.policy = null;
+        setShouldCache(false);
+    }
+
+    /**
+     * Setting the priority, before the request is added to the queue.
+     *
+     * @param priority priority from {@link SchedulerConfig}
+     * @return this request
+     */
+    ParsedJsonRequest<T> setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return lifetime of the cached response, null if not cached
+     * @see RevalidatingNetwork
+     */
+    CachePolicy getCachePolicy() {
+        return policy;
+    }
+
+    /**
+     * Decoding and parsing the response.
+     */
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        try {
+            String json = new String(response.data,
+                    HttpHeaderParser.parseCharset(response.headers, PROTOCOL_CHARSET));
+
+            T result = parser.parse(new JSONObject(json));
+
+            Cache.Entry entry = (policy == null) ? null : policy.toCacheEntry(response);
+            return Response.success(result, entry);
+        } catch (UnsupportedEncodingException | JSONException err) {
+            return Response.error(new ParseError(err));
+        }
+    }
+
+    /**
+     * Delivering the first response only.
+     */
+    @Override
+    protected void deliverResponse(T response) {
+        if (delivered)
+            return;
+
+        delivered = true;
+        super.deliverResponse(response);
+    }
+}
@@ -0,0 +1,167 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import anders.olsen.moviebrowser.listener.TmdbListener;
+
+/**
+ * Merging identical requests which are in flight at the same time.
+ * <p>
+ * The first caller for a key sends the request. Callers with the same key, while the request is
+ * in flight, are only added as listeners. When the response arrives, all listeners are fired
+ * from the one response. Listeners after the first receive a {@link #copy(Object)} of the
+ * result, so a listener can modify its result without affecting the others.
+ * <p>
+ * A request whose listeners are all cancelled, see {@link RequestScope}, is cancelled in the
+ * queue. The next caller for the key then sends a new request.
+ * <p>
+ * Not thread-safe, must only be used on the main thread, where Volley delivers responses.
+ * Package-private, only services in the loader package need access.
+ *
+ * @param <T> result type
+ * @author Anders Engen Olsen
+ * @see BaseService#fetchMediaObjects(String, TmdbListener, String, CachePolicy, Request.Priority)
+ */
+class RequestCoalescer<T> {
+
+    /**
+     * Listeners waiting for each request in flight
+     */
+    private final Map<String, List<TmdbListener<T>>> inFlight = new HashMap<>();
+    /**
+     * Request sent for each key in flight
+     */
+    private final Map<String, Request<?>> requests = new HashMap<>();
+    /**
+     * Number of requests which were not sent, because an identical request was in flight
+     */
+    private int savedRequests;
+
+    /**
+     * Adding a listener for a key.
+     *
+     * @param key      key identifying the request, e.g. the url
+     * @param listener fired when the response arrives
+     * @return true if the caller should send the request,
+     * false if an identical request is already in flight
+     */
+    boolean join(String key, TmdbListener<T> listener) {
+        List<TmdbListener<T>> listeners = inFlight.get(key);
+
+        if (listeners != null && !isCancelled(listeners)) {
+            listeners.add(listener);
+            savedRequests++;
+            return false;
+        }
+
+        listeners = new ArrayList<>();
+        listeners.add(listener);
+        inFlight.put(key, listeners);
+        requests.remove(key);
+        return true;
+    }
+
+    /**
+     * Remembering the request sent for a key, after join returned true.
+     *
+     * @param key     key identifying the request
+     * @param request request sent
+     */
+    void setRequest(String key, Request<?> request) {
+        if (inFlight.containsKey(key))
+            requests.put(key, request);
+    }
+
+    /**
+     * @param key key identifying the request
+     * @return request in flight for the key, null if none
+     */
+    Request<?> getRequest(String key) {
+        return requests.get(key);
+    }
+
+    /**
+     * Firing onSuccess for all listeners waiting for the key.
+     *
+     * @param key    key identifying the request
+     * @param result result from the response
+     */
+    void onSuccess(String key, T result) {
+        requests.remove(key);
+        List<TmdbListener<T>> listeners = inFlight.remove(key);
+        if (listeners == null)
+            return;
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).onSuccess((i == 0) ? result : copy(result));
+    }
+
+    /**
+     * Firing onError for all listeners waiting for the key.
+     *
+     * @param key     key identifying the request
+     * @param message error message
+     */
+    void onError(String key, String message) {
+        requests.remove(key);
+        List<TmdbListener<T>> listeners = inFlight.remove(key);
+        if (listeners == null)
+            return;
+
+        for (TmdbListener<T> listener : listeners)
+            listener.onError(message);
+    }
+
+    /**
+     * @param key key identifying the request
+     * @return listeners waiting for the request in flight, also those added later.
+     * Null if no request is in flight
+     */
+    List<TmdbListener<T>> getListeners(String key) {
+        return inFlight.get(key);
+    }
+
+    /**
+     * @param key      key identifying the request
+     * @param listener listener added with join
+     * @return true if the listener is waiting for the response to the request in flight
+     */
+    boolean isWaiting(String key, TmdbListener<T> listener) {
+        List<TmdbListener<T>> listeners = inFlight.get(key);
+        return listeners != null && listeners.contains(listener);
+    }
+
+    /**
+     * @param listeners listeners waiting for a request
+     * @return true if all are cancelled, and the request with them
+     */
+    private static <T> boolean isCancelled(List<TmdbListener<T>> listeners) {
+        for (TmdbListener<T> listener : listeners)
+            if (!RequestScope.isCancelled(listener))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return number of requests which were not sent, because an identical request was in flight
+     */
+    int getSavedRequests() {
+        return savedRequests;
+    }
+
+    /**
+     * Copying a result for listeners after the first.
+     * Results are shared as is, unless overridden.
+     *
+     * @param result result from the response
+     * @return result for another listener
+     */
+    T copy(T result) {
+        return result;
+    }
+}
@@ -0,0 +1,291 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import anders.olsen.moviebrowser.listener.CachedTmdbListener;
+import anders.olsen.moviebrowser.listener.PrefetchTmdbListener;
+import anders.olsen.moviebrowser.listener.TmdbListener;
+
+/**
+ * Requests made for an activity or fragment, cancelled together.
+ * <p>
+ * Listeners are bound to the scope before they are passed to a service. When the scope is
+ * cancelled, e.g. another genre is chosen, the bound listeners are never fired, and release the
+ * activity. Requests whose listeners are all cancelled are cancelled in the RequestQueue, so
+ * they are neither downloaded nor parsed. A request shared by listeners from several scopes,
+ * see {@link RequestCoalescer}, is sent until all of them are cancelled.
+ * <p>
+ * Must only be used on the main thread.
+ *
+ * @author Anders Engen Olsen
+ * @see TmdbManager#newScope()
+ */
+public class RequestScope {
+
+    /**
+     * Cancelling requests whose listeners are all cancelled
+     */
+    private static final RequestQueue.RequestFilter CANCELLED = new RequestQueue.RequestFilter() {
+        @Override
+        public boolean apply(Request<?> request) {
+            return request.getTag() instanceof Tag && ((Tag) request.getTag()).isCancelled();
+        }
+    };
+
+    /**
+     * Queue the requests are sent with
+     */
+    private final RequestQueue queue;
+    /**
+     * Listeners bound and not yet done
+     */
+    private final Set<ScopedListener<?>> bound = new HashSet<>();
+    /**
+     * True when destroyed, listeners bound later are cancelled at once
+     */
+    private boolean destroyed;
+
+    /**
+     * Constructor.
+     *
+     * @param queue queue the requests are sent with
+     */
+    RequestScope(RequestQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * @param listener listener to bind
+     * @return listener fired until the scope is cancelled
+     */
+    public <T> TmdbListener<T> bind(TmdbListener<T> listener) {
+        return add(new ScopedListener<>(this, listener));
+    }
+
+    /**
+     * @param listener listener to bind
+     * @return listener fired until the scope is cancelled, given the stored result as well
+     */
+    public <T> CachedTmdbListener<T> bind(CachedTmdbListener<T> listener) {
+        return add(new ScopedCachedListener<>(this, listener));
+    }
+
+    /**
+     * @param listener listener to bind
+     * @return listener fired until the scope is cancelled, fetched with low priority
+     */
+    public <T> PrefetchTmdbListener<T> bind(PrefetchTmdbListener<T> listener) {
+        return add(new ScopedPrefetchListener<>(this, listener));
+    }
+
+    /**
+     * Cancelling the listeners bound so far, e.g. when another genre is chosen.
+     * Listeners bound afterwards are fired as usual.
+     */
+    public void cancel() {
+        if (bound.isEmpty())
+            return;
+
+        for (ScopedListener<?> listener : bound)
+            listener.delegate = null;
+        bound.clear();
+
+        queue.cancelAll(CANCELLED);
+    }
+
+    /**
+     * Cancelling all listeners, also those bound later. Called when the activity is destroyed.
+     */
+    public void destroy() {
+        destroyed = true;
+        cancel();
+    }
+
+    /**
+     * @param listener listener passed to a service, may be null
+     * @return true if bound to a scope, and cancelled
+     */
+    static boolean isCancelled(TmdbListener<?> listener) {
+        if (listener instanceof FollowingListener)
+            return isCancelled(((FollowingListener<?>) listener).outer);
+
+        return listener instanceof ScopedListener && ((ScopedListener<?>) listener).delegate == null;
+    }
+
+    /**
+     * Creating a listener for part of a request, e.g. one page of a batch, which is cancelled
+     * with the listener of the whole request. A prefetch stays a prefetch.
+     *
+     * @param outer listener of the whole request, may be null
+     * @param inner listener of the part
+     * @return listener forwarding to inner, until outer is cancelled
+     */
+    static <T> TmdbListener<T> follow(TmdbListener<?> outer, TmdbListener<T> inner) {
+        if (outer instanceof PrefetchTmdbListener)
+            return new FollowingPrefetchListener<>(outer, inner);
+
+        return new FollowingListener<>(outer, inner);
+    }
+
+    /**
+     * Tagging a request with its listener, so it is cancelled with the listener.
+     *
+     * @param request  request to tag
+     * @param listener listener of the request, may be null
+     */
+    static void tag(Request<?> request, TmdbListener<?> listener) {
+        request.setTag(new Tag(Collections.<TmdbListener<?>>singletonList(listener)));
+    }
+
+    /**
+     * Tagging a shared request with its listeners, so it is cancelled when all are cancelled.
+     *
+     * @param request   request to tag
+     * @param listeners listeners of the request, also those added later
+     */
+    static void tag(Request<?> request, Collection<? extends TmdbListener<?>> listeners) {
+        request.setTag(new Tag(listeners));
+    }
+
+    /**
+     * Adding a listener to the scope, cancelled at once if destroyed.
+     */
+    private <L extends ScopedListener<?>> L add(L listener) {
+        if (destroyed)
+            listener.delegate = null;
+        else
+            bound.add(listener);
+        return listener;
+    }
+
+    /**
+     * Removing a listener which is done.
+     */
+    private void remove(ScopedListener<?> listener) {
+        bound.remove(listener);
+    }
+
+    /**
+     * Tag of a request: the listeners waiting for it.
+     */
+    private static class Tag {
+        private final Collection<? extends TmdbListener<?>> listeners;
+
+        private Tag(Collection<? extends TmdbListener<?>> listeners) {
+            this.listeners = listeners;
+        }
+
+        /**
+         * @return true if all listeners are cancelled
+         */
+        private boolean isCancelled() {
+            for (TmdbListener<?> listener : listeners)
+                if (!RequestScope.isCancelled(listener))
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * Listener forwarding to the bound listener, until the scope is cancelled.
+     */
+    private static class ScopedListener<T> implements TmdbListener<T> {
+        private final RequestScope scope;
+        TmdbListener<T> delegate;
+
+        private ScopedListener(RequestScope scope, TmdbListener<T> delegate) {
+            this.scope = scope;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            TmdbListener<T> listener = delegate;
+            if (listener == null)
+                return;
+
+            scope.remove(this);
+            listener.onSuccess(result);
+        }
+
+        @Override
+        public void onError(String result) {
+            TmdbListener<T> listener = delegate;
+            if (listener == null)
+                return;
+
+            scope.remove(this);
+            listener.onError(result);
+        }
+    }
+
+    /**
+     * Listener for part of a request, cancelled with the listener of the whole request.
+     */
+    private static class FollowingListener<T> implements TmdbListener<T> {
+        private final TmdbListener<?> outer;
+        private final TmdbListener<T> inner;
+
+        private FollowingListener(TmdbListener<?> outer, TmdbListener<T> inner) {
+            this.outer = outer;
+            this.inner = inner;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            if (!isCancelled(outer))
+                inner.onSuccess(result);
+        }
+
+        @Override
+        public void onError(String result) {
+            if (!isCancelled(outer))
+                inner.onError(result);
+        }
+    }
+
+    /**
+     * Following listener for part of a prefetch.
+     */
+    private static class FollowingPrefetchListener<T> extends FollowingListener<T>
+            implements PrefetchTmdbListener<T> {
+
+        private FollowingPrefetchListener(TmdbListener<?> outer, TmdbListener<T> inner) {
+            super(outer, inner);
+        }
+    }
+
+    /**
+     * Scoped listener which is also given the stored result.
+     */
+    private static class ScopedCachedListener<T> extends ScopedListener<T>
+            implements CachedTmdbListener<T> {
+
+        private ScopedCachedListener(RequestScope scope, CachedTmdbListener<T> delegate) {
+            super(scope, delegate);
+        }
+
+        @Override
+        public void onCached(T result) {
+            if (delegate != null)
+                ((CachedTmdbListener<T>) delegate).onCached(result);
+        }
+    }
+
+    /**
+     * Scoped listener for a result fetched ahead of time.
+     */
+    private static class ScopedPrefetchListener<T> extends ScopedListener<T>
+            implements PrefetchTmdbListener<T> {
+
+        private ScopedPrefetchListener(RequestScope scope, PrefetchTmdbListener<T> delegate) {
+            super(scope, delegate);
+        }
+    }
+}
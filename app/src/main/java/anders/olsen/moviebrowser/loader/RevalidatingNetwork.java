@@ -0,0 +1,75 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.VolleyError;
+
+/**
+ * Network which renews the lifetime of a cached response when TMDB answers 304 Not Modified.
+ * <p>
+ * When a response is older than the soft ttl, Volley delivers the cached response and
+ * revalidates it. If the response is unchanged, Volley does not write the cache again, since
+ * a response has already been delivered. The soft ttl is then never renewed, and every load
+ * goes to the network until the hard ttl has passed. Here the cached entry is stored again,
+ * with a new lifetime from its {@link CachePolicy}.
+ * <p>
+ * Thread-safe, used on the Volley network threads.
+ * Package-private, only used by the loader package.
+ *
+ * @author Anders Engen Olsen
+ * @see CachePolicy#toCacheEntry(NetworkResponse)
+ */
+class RevalidatingNetwork implements Network {
+
+    /**
+     * Network sending the requests
+     */
+    private final Network network;
+    /**
+     * Cache shared with the request queue
+     */
+    private final Cache cache;
+
+    /**
+     * Constructor.
+     *
+     * @param network network sending the requests
+     * @param cache   cache shared with the request queue
+     */
+    RevalidatingNetwork(Network network, Cache cache) {
+        this.network = network;
+        this.cache = cache;
+    }
+
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+        NetworkResponse response = network.performRequest(request);
+
+        // Without a delivered response, Volley parses the 304 and writes the cache itself
+        if (response.notModified && response.data != null && request.shouldCache()
+                && request.hasHadResponseDelivered()) {
+            CachePolicy policy = getCachePolicy(request);
+            Cache.Entry entry = (policy == null) ? null : policy.toCacheEntry(response);
+
+            if (entry != null)
+                cache.put(request.getCacheKey(), entry);
+        }
+
+        return response;
+    }
+
+    /**
+     * @param request request sent
+     * @return lifetime of the cached response, null if not cached
+     */
+    private static CachePolicy getCachePolicy(Request<?> request) {
+        if (request instanceof MediaObjectRequest)
+            return ((MediaObjectRequest<?>) request).getCachePolicy();
+        if (request instanceof ParsedJsonRequest)
+            return ((ParsedJsonRequest<?>) request).getCachePolicy();
+
+        return null;
+    }
+}
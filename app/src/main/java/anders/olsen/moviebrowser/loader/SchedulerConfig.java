@@ -0,0 +1,63 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Request.Priority;
+
+/**
+ * Configuration of the request queue, and the priority of the requests from each service method.
+ * <p>
+ * Volley dispatches waiting requests by priority, so a request the user waits for is sent
+ * before requests for data not yet shown. Requests with {@link Priority#LOW} are also limited to
+ * {@link #MAX_LOW_IN_FLIGHT}, so a network thread is always free when the user taps something.
+ * <p>
+ * Package-private, only used by the loader package.
+ *
+ * @author Anders Engen Olsen
+ * @see SchedulingRequestQueue
+ */
+final class SchedulerConfig {
+
+    /**
+     * Number of network threads
+     */
+    static final int NETWORK_THREADS = 4;
+    /**
+     * Max number of low priority requests sent at the same time
+     */
+    static final int MAX_LOW_IN_FLIGHT = NETWORK_THREADS - 1;
+    /**
+     * Directory in the app cache dir, where responses from TMDB are cached
+     */
+    static final String CACHE_DIR = "tmdb";
+    /**
+     * Max size in bytes of the response cache.
+     * When full, the least recently used responses are evicted.
+     */
+    static final int CACHE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Details, trailer and login. The user tapped something, and waits for it.
+     */
+    static final Priority DETAILS = Priority.IMMEDIATE;
+    /**
+     * Search results, typed by the user.
+     */
+    static final Priority SEARCH = Priority.HIGH;
+    /**
+     * Lists in the visible tab, the users lists and genres.
+     */
+    static final Priority LISTS = Priority.NORMAL;
+    /**
+     * Pages fetched ahead of the scroll position.
+     */
+    static final Priority PREFETCH = Priority.LOW;
+    /**
+     * Account states and changes to the users lists, posted in the background.
+     */
+    static final Priority SYNC = Priority.LOW;
+
+    /**
+     * Not instantiable.
+     */
+    private SchedulerConfig() {
+    }
+}
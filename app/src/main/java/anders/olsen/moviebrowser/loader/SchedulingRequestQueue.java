@@ -0,0 +1,149 @@
+package anders.olsen.moviebrowser.loader;
+
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * RequestQueue which limits the number of low priority requests sent at the same time.
+ * <p>
+ * Volley sends waiting requests by priority, but a request already sent is not stopped.
+ * Without a limit, a backlog of prefetches could occupy every network thread, and a tap
+ * would wait for them. Low priority requests beyond {@link SchedulerConfig#MAX_LOW_IN_FLIGHT}
+ * are held here, and added to Volley when a low priority request is finished. A held request
+ * the user starts waiting for, e.g. a prefetched page in a tab the user opens, is released with
+ * {@link #release(Request)}, and added again with a higher priority.
+ * <p>
+ * Thread-safe, requests are finished on Volley threads.
+ *
+ * @author Anders Engen Olsen
+ * @see SchedulerConfig
+ */
+class SchedulingRequestQueue extends RequestQueue {
+
+    /**
+     * Low priority requests waiting to be added to Volley
+     */
+    private final ArrayDeque<Request<?>> held = new ArrayDeque<>();
+    /**
+     * Max number of low priority requests in Volley
+     */
+    private final int maxLowInFlight;
+    /**
+     * Low priority requests in Volley
+     */
+    private int lowInFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param cache          response cache
+     * @param network        network
+     * @param threads        number of network threads
+     * @param maxLowInFlight max number of low priority requests sent at the same time
+     */
+    SchedulingRequestQueue(Cache cache, Network network, int threads, int maxLowInFlight) {
+        super(cache, network, threads);
+        this.maxLowInFlight = maxLowInFlight;
+
+        addRequestFinishedListener(new RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(Request<Object> request) {
+                if (request.getPriority() == Request.Priority.LOW)
+                    onLowFinished();
+            }
+        });
+    }
+
+    /**
+     * Adding a request, held if it has low priority and the limit is reached.
+     */
+    @Override
+    public <T> Request<T> add(Request<T> request) {
+        if (request.getPriority() == Request.Priority.LOW) {
+            synchronized (held) {
+                if (lowInFlight >= maxLowInFlight) {
+                    held.add(request);
+                    return request;
+                }
+                lowInFlight++;
+            }
+        }
+
+        return super.add(request);
+    }
+
+    /**
+     * Removing a request which is held, so it can be added again with a higher priority.
+     * Requests already in Volley are not changed, since Volley orders waiting requests when
+     * they are added. At most {@link SchedulerConfig#MAX_LOW_IN_FLIGHT} of them are waiting.
+     *
+     * @param request request added with low priority
+     * @return true if the request was held, and is removed
+     */
+    boolean release(Request<?> request) {
+        synchronized (held) {
+            return held.remove(request);
+        }
+    }
+
+    /**
+     * Cancelling requests in Volley, and held requests with the tag.
+     */
+    @Override
+    public void cancelAll(final Object tag) {
+        if (tag == null)
+            throw new IllegalArgumentException("Cannot cancelAll with a null tag");
+
+        cancelAll(new RequestFilter() {
+            @Override
+            public boolean apply(Request<?> request) {
+                return request.getTag() == tag;
+            }
+        });
+    }
+
+    /**
+     * Cancelling requests in Volley, and dropping held requests accepted by the filter.
+     */
+    @Override
+    public void cancelAll(RequestFilter filter) {
+        synchronized (held) {
+            Iterator<Request<?>> iterator = held.iterator();
+            while (iterator.hasNext()) {
+                Request<?> request = iterator.next();
+                if (filter.apply(request)) {
+                    request.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+
+        super.cancelAll(filter);
+    }
+
+    /**
+     * Adding the next held request to Volley, skipping cancelled ones.
+     */
+    private void onLowFinished() {
+        Request<?> next = null;
+
+        synchronized (held) {
+            lowInFlight--;
+            while (!held.isEmpty() && next == null) {
+                Request<?> request = held.poll();
+                if (!request.isCanceled())
+                    next = request;
+            }
+            if (next != null)
+                lowInFlight++;
+        }
+
+        if (next != null)
+            super.add(next);
+    }
+}
@@ -0,0 +1,126 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import anders.olsen.moviebrowser.model.MediaObject;
+
+/**
+ * Search results kept in memory, by normalised query and page.
+ * <p>
+ * While the user types, the results for a shorter query are filtered locally, so results are
+ * shown before the response for the longer query arrives. Results are kept for
+ * {@link #MAX_AGE}, and at most {@link #MAX_CACHED} pages, the least recently used are dropped.
+ * <p>
+ * Must only be used on the main thread, where Volley delivers responses.
+ * Package-private, only used by {@link SearchService}.
+ *
+ * @author Anders Engen Olsen
+ * @see IncrementalSearch
+ */
+class SearchCache {
+
+    /**
+     * Time a page is used before it is searched again
+     */
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * Max number of cached pages
+     */
+    private static final int MAX_CACHED = 50;
+
+    /**
+     * Cached pages by key, in access order
+     */
+    private final LinkedHashMap<String, CachedPage> cache =
+            new LinkedHashMap<String, CachedPage>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    /**
+     * Normalising a query, so e.g. "Star  Wars " and "star wars" share results.
+     *
+     * @param query query typed by the user
+     * @return trimmed, lower case query with single spaces
+     */
+    static String normalise(String query) {
+        if (query == null)
+            return "";
+
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param query normalised query
+     * @param page  page in api
+     * @return copy of the cached page, null if not cached or too old
+     */
+    ArrayList<MediaObject> get(String query, int page) {
+        CachedPage cached = cache.get(key(query, page));
+        if (cached == null || SystemClock.elapsedRealtime() - cached.time > MAX_AGE)
+            return null;
+
+        return new ArrayList<>(cached.page);
+    }
+
+    /**
+     * @param query normalised query
+     * @param page  page in api
+     * @param result downloaded page
+     */
+    void put(String query, int page, ArrayList<MediaObject> result) {
+        cache.put(key(query, page), new CachedPage(new ArrayList<>(result),
+                SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Finding the first page of the longest cached query which the query starts with,
+     * and keeping the mediaobjects whose title contains the query.
+     *
+     * @param query normalised query
+     * @return filtered mediaobjects, null if no shorter query is cached
+     */
+    ArrayList<MediaObject> filter(String query) {
+        for (int length = query.length() - 1; length > 0; length--) {
+            ArrayList<MediaObject> shorter = get(query.substring(0, length).trim(), 1);
+            if (shorter == null)
+                continue;
+
+            ArrayList<MediaObject> filtered = new ArrayList<>();
+            for (MediaObject mo : shorter)
+                if (normalise(mo.getTitle()).contains(query))
+                    filtered.add(mo);
+            return filtered;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return key in the cache
+     */
+    private static String key(String query, int page) {
+        return page + " " + query;
+    }
+
+    /**
+     * Downloaded page, and the time it was downloaded.
+     */
+    private static class CachedPage {
+        private final ArrayList<MediaObject> page;
+        private final long time;
+
+        private CachedPage(ArrayList<MediaObject> page, long time) {
+            this.page = page;
+            this.time = time;
+        }
+    }
+}
@@ -18,12 +18,20 @@ import static anders.olsen.moviebrowser.constants.TmdbConstants.URL_SEARCH;
 
 /**
  * Class responsible for searching after movies and TV shows at TMDB
+ * <p>
+ * Results are kept in a {@link SearchCache}, so searching again, e.g. when paging back or
+ * submitting a query which was typed, is answered at once.
  *
  * @author Anders Engen Olsen
  */
 
 public class SearchService extends BaseService {
 
+    /**
+     * Results by normalised query and page
+     */
+    private final SearchCache searchCache = new SearchCache();
+
     /**
      * Constructor.
      */
@@ -33,24 +41,69 @@ public class SearchService extends BaseService {
 
     /**
      * Searching for movies and TV shows.
-     * Calling fetchMediaObjects to get the response.
+     * Calling fetchMediaObjects to get the response, unless the results are cached.
      * Type parameter for fetchMediaObjects is null - thus, the jsonParser will try to determine
      * the type itself.
      *
      * @param query    query to search for
      * @param page     page to load from api
      * @param listener TmdbListener
-     * @see #fetchMediaObjects(String, TmdbListener, String)
+     * @see #fetchMediaObjects(String, TmdbListener, String, CachePolicy, Request.Priority)
      */
     public void searchMoviesAndTV(String query, int page,
                                   final TmdbListener<ArrayList<MediaObject>> listener) {
+        String normalised = SearchCache.normalise(query);
+
+        ArrayList<MediaObject> cached = searchCache.get(normalised, page);
+        if (cached != null) {
+            listener.onSuccess(cached);
+            return;
+        }
 
         Uri uri = Uri.parse(API_BASE_URL + URL_SEARCH).buildUpon()
                 .appendQueryParameter(PARAM_API_KEY, apiKey)
                 .appendQueryParameter(PARAM_PAGE, String.valueOf(page))
-                .appendQueryParameter(PARAM_QUERY, query)
+                .appendQueryParameter(PARAM_QUERY, normalised)
                 .build();
 
-        fetchMediaObjects(uri.toString(), listener, null);
+        fetchMediaObjects(uri.toString(), listener, null, CachePolicy.SEARCH,
+                SchedulerConfig.SEARCH);
+    }
+
+    /**
+     * Creating a search which is updated while the user types.
+     *
+     * @return IncrementalSearch, cancelled by the caller
+     * @see IncrementalSearch
+     */
+    public IncrementalSearch newIncrementalSearch() {
+        return new IncrementalSearch(this, new RequestScope(queue));
+    }
+
+    /**
+     * @param query normalised query
+     * @return true if the first page is cached
+     */
+    boolean isCached(String query) {
+        return searchCache.get(query, 1) != null;
+    }
+
+    /**
+     * @param query normalised query
+     * @return cached results of a shorter query, filtered by the query. Null if none is cached
+     * @see SearchCache#filter(String)
+     */
+    ArrayList<MediaObject> filterCached(String query) {
+        return searchCache.filter(query);
+    }
+
+    /**
+     * Caching the downloaded results by the query and page in the url.
+     */
+    @Override
+    void onDownloaded(String url, ArrayList<MediaObject> page) {
+        Uri uri = Uri.parse(url);
+        searchCache.put(uri.getQueryParameter(PARAM_QUERY),
+                Integer.parseInt(uri.getQueryParameter(PARAM_PAGE)), page);
     }
 }
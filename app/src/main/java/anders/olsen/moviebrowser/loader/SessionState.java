@@ -0,0 +1,121 @@
+package anders.olsen.moviebrowser.loader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import anders.olsen.moviebrowser.listener.SessionListener;
+
+import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_ID;
+import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_SESSION;
+
+/**
+ * The session id of the logged in user, kept in memory.
+ * <p>
+ * The session id is read from SharedPrefs once, when the state is created. Account calls read
+ * it from memory. A new session is written to memory and SharedPrefs together, and the
+ * {@link SessionListener}s are notified.
+ * <p>
+ * The session id may be read from any thread. Listeners are added, removed and notified on the
+ * main thread. Package-private, the listeners are added through {@link AccountService}.
+ *
+ * @author Anders Engen Olsen
+ * @see TmdbSession
+ */
+class SessionState {
+
+    /**
+     * Singleton
+     */
+    private static SessionState state = null;
+
+    /**
+     * SharedPrefs where the session id is stored
+     */
+    private final SharedPreferences prefs;
+    /**
+     * Listeners notified when the session changes
+     */
+    private final List<SessionListener> listeners = new ArrayList<>();
+    /**
+     * Session id, null if not logged in
+     */
+    private volatile String sessionId;
+
+    /**
+     * Private constructor. Called from getInstance().
+     *
+     * @param context context
+     */
+    private SessionState(Context context) {
+        prefs = context.getSharedPreferences(SHARED_PREF_SESSION, Context.MODE_PRIVATE);
+        sessionId = prefs.getString(SHARED_PREF_ID, null);
+    }
+
+    /**
+     * Initializing a SessionState if null, reading the session id.
+     *
+     * @param context context
+     * @return Singleton object
+     */
+    static synchronized SessionState getInstance(Context context) {
+        if (state == null)
+            state = new SessionState(context.getApplicationContext());
+
+        return state;
+    }
+
+    /**
+     * @return session id, null if not logged in
+     */
+    String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return true if logged in
+     */
+    boolean isLoggedIn() {
+        return sessionId != null;
+    }
+
+    /**
+     * Replacing the session, in memory and in SharedPrefs, and notifying the listeners.
+     * Nothing is done if the session is not changed.
+     *
+     * @param sessionId new session id, null to log out
+     */
+    void setSessionId(String sessionId) {
+        if (sessionId == null ? this.sessionId == null : sessionId.equals(this.sessionId))
+            return;
+
+        this.sessionId = sessionId;
+
+        SharedPreferences.Editor editor = prefs.edit();
+        if (sessionId != null)
+            editor.putString(SHARED_PREF_ID, sessionId);
+        else
+            editor.remove(SHARED_PREF_ID);
+        editor.apply();
+
+        // Copy, a listener may remove itself
+        for (SessionListener listener : new ArrayList<>(listeners))
+            listener.onSessionChanged(sessionId != null);
+    }
+
+    /**
+     * @param listener notified when the session changes
+     */
+    void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    void removeListener(SessionListener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -1,13 +1,20 @@
 package anders.olsen.moviebrowser.loader;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
+import com.android.volley.Cache;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.File;
 
-import anders.olsen.moviebrowser.activities.BaseActivity;
 import anders.olsen.moviebrowser.config.Config;
+import anders.olsen.moviebrowser.listener.SessionListener;
+import anders.olsen.moviebrowser.listener.TmdbListener;
+import anders.olsen.moviebrowser.model.AccountState;
+import anders.olsen.moviebrowser.model.MediaObject;
 
 /**
  * Class responsible for connection to the TMDB API v3.
@@ -17,6 +24,8 @@ import anders.olsen.moviebrowser.config.Config;
  * Calls directly to a Tmdb user's account is done through AccountService.
  * Fetching of movie lists etc are done through MovieService.
  * Fetching of tv lists etc are done through TvService
+ * <p>
+ * All services share one request queue, configured in {@link SchedulerConfig}.
  *
  * @author Anders Engen Olsen
  * @link https://www.developers.themoviedb.org/3/
@@ -69,6 +78,18 @@ public class TmdbManager {
      * @see TvAccountService
      */
     private TvAccountService tvAccountService;
+    /**
+     * Account states shared by the account services
+     *
+     * @see AccountStateLoader
+     */
+    private AccountStateLoader accountStates;
+    /**
+     * Changes to the users lists and ratings, shared by the services
+     *
+     * @see MutationQueue
+     */
+    private MutationQueue mutations;
 
     /**
      * Private constructor. Called from getInstance().
@@ -78,14 +99,49 @@ public class TmdbManager {
      */
     private TmdbManager(Context context) {
         this.context = context;
-        jsonParser = new JsonParser(context);
-        queue = Volley.newRequestQueue(context);
-
-        accountService = new AccountService(context, queue, jsonParser, Config.TMDB_API_KEY);
-        movieAccountService = new MovieAccountService(context, queue, jsonParser, Config.TMDB_API_KEY);
-        tvAccountService = new TvAccountService(context, queue, jsonParser, Config.TMDB_API_KEY);
-        movieService = new MovieService(context, queue, jsonParser, Config.TMDB_API_KEY);
-        tvService = new TvService(context, queue, jsonParser, Config.TMDB_API_KEY);
+        jsonParser = new JsonParser(GenreCatalog.getInstance(context));
+        Cache cache = new DiskBasedCache(new File(context.getCacheDir(), SchedulerConfig.CACHE_DIR),
+                SchedulerConfig.CACHE_SIZE);
+        queue = new SchedulingRequestQueue(cache,
+                new RevalidatingNetwork(new BasicNetwork(new HurlStack()), cache),
+                SchedulerConfig.NETWORK_THREADS, SchedulerConfig.MAX_LOW_IN_FLIGHT);
+        queue.start();
+
+        // Fetched through the account service, which is created below
+        accountStates = new AccountStateLoader(new AccountStateLoader.StateFetcher() {
+            @Override
+            public void fetch(MediaObject mo, TmdbListener<AccountState> listener) {
+                accountService.fetchAccountState(mo, listener);
+            }
+        });
+        // Account states loaded for another account are dropped
+        SessionState.getInstance(context).addListener(new SessionListener() {
+            @Override
+            public void onSessionChanged(boolean loggedIn) {
+                accountStates.invalidate();
+            }
+        });
+
+        mutations = new MutationQueue(context, queue, jsonParser, Config.TMDB_API_KEY);
+        mutations.setOnRejectedListener(new MutationQueue.OnRejectedListener() {
+            @Override
+            public void onRejected(String type, int id, String list) {
+                // Fetched again, the state shown was never accepted by TMDB
+                MediaObject mo = MediaObject.find(type, id);
+                if (mo != null)
+                    accountStates.forget(mo);
+            }
+        });
+
+        accountService = new AccountService(context, queue, jsonParser, Config.TMDB_API_KEY,
+                accountStates, mutations);
+        movieAccountService = new MovieAccountService(context, queue, jsonParser,
+                Config.TMDB_API_KEY, accountStates, mutations);
+        tvAccountService = new TvAccountService(context, queue, jsonParser,
+                Config.TMDB_API_KEY, accountStates, mutations);
+        movieService = new MovieService(context, queue, jsonParser, Config.TMDB_API_KEY,
+                mutations);
+        tvService = new TvService(context, queue, jsonParser, Config.TMDB_API_KEY, mutations);
         searchService = new SearchService(context, queue, jsonParser, Config.TMDB_API_KEY);
     }
 
@@ -103,15 +159,15 @@ public class TmdbManager {
     }
 
     /**
-     * Determining whether genres has been downloaded and shared in SharedPrefs.
+     * Number of requests which were not sent, because an identical request was in flight.
      *
-     * @return true if genres downloaded
+     * @return requests saved by merging identical requests, in all services
+     * @see RequestCoalescer
      */
-    public boolean hasGenres() {
-        SharedPreferences prefs = context.getSharedPreferences(BaseActivity.SHARED_PREF_GENRES,
-                Context.MODE_PRIVATE);
-
-        return prefs.getAll().size() != 0;
+    public int getSavedRequestCount() {
+        return movieService.getSavedRequests() + tvService.getSavedRequests()
+                + searchService.getSavedRequests() + accountService.getSavedRequests()
+                + movieAccountService.getSavedRequests() + tvAccountService.getSavedRequests();
     }
 
     /**
@@ -130,6 +186,16 @@ public class TmdbManager {
         return tvService;
     }
 
+    /**
+     * Creating a scope for the requests made by an activity or fragment.
+     *
+     * @return RequestScope, destroyed by the caller
+     * @see RequestScope
+     */
+    public RequestScope newScope() {
+        return new RequestScope(queue);
+    }
+
     /**
      * @return AccountService
      * @see AccountService
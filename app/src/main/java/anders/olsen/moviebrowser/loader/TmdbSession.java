@@ -1,15 +1,14 @@
 package anders.olsen.moviebrowser.loader;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.net.Uri;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import anders.olsen.moviebrowser.R;
@@ -21,12 +20,11 @@ import static anders.olsen.moviebrowser.constants.TmdbConstants.NEW_SESSION;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.NEW_TOKEN;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_API_KEY;
 import static anders.olsen.moviebrowser.constants.TmdbConstants.PARAM_REQUEST_TOKEN;
-import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_ID;
-import static anders.olsen.moviebrowser.constants.TmdbConstants.SHARED_PREF_SESSION;
 
 /**
  * Package private class. Calls to this class is done through AccountService.
- * This class creates a session, and the corresponding session id is written to SharedPrefs.
+ * This class creates a session, and the corresponding session id is kept in the
+ * {@link SessionState}, which writes it to SharedPrefs.
  *
  * @author Anders Engen Olsen
  * @see TmdbManager
@@ -53,6 +51,10 @@ class TmdbSession {
      * @see JsonParser
      */
     private JsonParser jsonParser;
+    /**
+     * @see SessionState
+     */
+    private SessionState state;
 
     /**
      * Contstructor.
@@ -67,6 +69,7 @@ class TmdbSession {
         this.queue = queue;
         this.jsonParser = jsonParser;
         this.apiKey = apiKey;
+        this.state = SessionState.getInstance(context);
     }
 
     /**
@@ -89,12 +92,22 @@ class TmdbSession {
      * @param listener TmdbListener
      */
     private void requestToken(String url, final TmdbListener<String> listener) {
-        final JsonObjectRequest json = new JsonObjectRequest(
-                Request.Method.GET, url, null, new Response.Listener<JSONObject>() {
+        final ParsedJsonRequest<String> json = new ParsedJsonRequest<>(
+                Request.Method.GET, url, null, new ParsedJsonRequest.Parser<String>() {
+            @Override
+            public String parse(JSONObject json) throws JSONException {
+                return jsonParser.parseToken(json);
+            }
+        }, new Response.Listener<String>() {
 
             @Override
-            public void onResponse(JSONObject response) {
-                token = jsonParser.parseToken(response);
+            public void onResponse(String response) {
+                if (response == null) {
+                    listener.onError(context.getString(R.string.error));
+                    return;
+                }
+
+                token = response;
 
                 String url = AUTH_URL + token;
                 listener.onSuccess(url);
@@ -107,6 +120,8 @@ class TmdbSession {
             }
         }
         );
+        json.setPriority(SchedulerConfig.DETAILS);
+        RequestScope.tag(json, listener);
         queue.add(json);
     }
 
@@ -131,25 +146,21 @@ class TmdbSession {
      * @param listener TmdbListener
      */
     private void createSession(String url, final TmdbListener<String> listener) {
-        final JsonObjectRequest json = new JsonObjectRequest(
-                Request.Method.GET, url, null, new Response.Listener<JSONObject>() {
-
+        final ParsedJsonRequest<String> json = new ParsedJsonRequest<>(
+                Request.Method.GET, url, null, new ParsedJsonRequest.Parser<String>() {
             @Override
-            public void onResponse(JSONObject response) {
-
+            public String parse(JSONObject json) throws JSONException {
                 // Extracting session with jsonParser
-                String sessionId = jsonParser.parseSession(response);
-
-                // Writing to shared prefs.
-                if (sessionId != null) {
-                    SharedPreferences sharedPreferences =
-                            context.getSharedPreferences(SHARED_PREF_SESSION, Context.MODE_PRIVATE);
-                    SharedPreferences.Editor editor = sharedPreferences.edit();
-
-                    editor.putString(SHARED_PREF_ID, sessionId);
+                return jsonParser.parseSession(json);
+            }
+        }, new Response.Listener<String>() {
 
-                    editor.apply();
+            @Override
+            public void onResponse(String sessionId) {
 
+                // Writing to memory and shared prefs.
+                if (sessionId != null) {
+                    state.setSessionId(sessionId);
                     listener.onSuccess(context.getString(R.string.logged_in));
                 } else {
                     listener.onError(context.getString(R.string.error_login));
@@ -163,26 +174,23 @@ class TmdbSession {
             }
         }
         );
-
+        json.setPriority(SchedulerConfig.DETAILS);
+        RequestScope.tag(json, listener);
         queue.add(json);
     }
 
     /**
-     * @return session id from shared prefs, null if none found
+     * @return session id, null if none found
+     * @see SessionState
      */
     String getSessionId() {
-        SharedPreferences prefs = context.getSharedPreferences(SHARED_PREF_SESSION,
-                Context.MODE_PRIVATE);
-
-        return prefs.getString(SHARED_PREF_ID, null);
+        return state.getSessionId();
     }
 
     /**
-     * @return true if session id in shared prefs.
+     * @return true if the user has a session id
      */
     boolean isLoggedIn() {
-        SharedPreferences prefs = context.getSharedPreferences(SHARED_PREF_SESSION,
-                Context.MODE_PRIVATE);
-        return prefs.getString(SHARED_PREF_ID, null) != null;
+        return state.isLoggedIn();
     }
 }
@@ -25,13 +25,16 @@ public class TvAccountService extends AccountService implements Saveable {
     /**
      * Constructor.
      *
-     * @param context    Activity context
-     * @param queue      RequestQueue
-     * @param jsonParser JsonParser
-     * @param apiKey     API-key to TMDB
+     * @param context       Activity context
+     * @param queue         RequestQueue
+     * @param jsonParser    JsonParser
+     * @param apiKey        API-key to TMDB
+     * @param accountStates account states shared by the account services
+     * @param mutations     changes posted in the background, shared by the services
      */
-    TvAccountService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
-        super(context, queue, jsonParser, apiKey);
+    TvAccountService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey,
+                      AccountStateLoader accountStates, MutationQueue mutations) {
+        super(context, queue, jsonParser, apiKey, accountStates, mutations);
     }
 
     /**
@@ -67,10 +70,7 @@ public class TvAccountService extends AccountService implements Saveable {
      */
     @Override
     public void hasInFavoriteList(MediaObject mo, TmdbListener<Boolean> listener) {
-        TmdbListener<ArrayList<MediaObject>> innerListener =
-                constructListInnerListener(mo, listener);
-
-        getFavoriteList(1, innerListener);
+        hasInList(mo, FAVORITE, listener);
     }
 
     /**
@@ -81,10 +81,7 @@ public class TvAccountService extends AccountService implements Saveable {
      */
     @Override
     public void hasInWatchlist(MediaObject mo, TmdbListener<Boolean> listener) {
-        TmdbListener<ArrayList<MediaObject>> innerListener =
-                constructListInnerListener(mo, listener);
-
-        getWatchlist(1, innerListener);
+        hasInList(mo, WATCHLIST, listener);
     }
 
     /**
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 
 import anders.olsen.moviebrowser.listener.TmdbListener;
 import anders.olsen.moviebrowser.model.Genre;
+import anders.olsen.moviebrowser.model.MediaDetails;
 import anders.olsen.moviebrowser.model.MediaObject;
 
 import static anders.olsen.moviebrowser.constants.TmdbConstants.API_BASE_URL;
@@ -39,8 +40,9 @@ import static anders.olsen.moviebrowser.constants.TmdbConstants.URL_VIDEOS;
  */
 public class TvService extends BaseMovieTvService {
 
-    TvService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey) {
-        super(context, queue, jsonParser, apiKey);
+    TvService(Context context, RequestQueue queue, JsonParser jsonParser, String apiKey,
+              MutationQueue mutations) {
+        super(context, queue, jsonParser, apiKey, mutations);
     }
 
     /**
@@ -122,7 +124,7 @@ public class TvService extends BaseMovieTvService {
                 .appendQueryParameter(PARAM_API_KEY, apiKey)
                 .build();
 
-        fetchMediaGenres(uri.toString(), listener);
+        fetchMediaGenres(uri.toString(), MEDIA_TYPE_TV, listener);
     }
 
     /**
@@ -147,6 +149,18 @@ public class TvService extends BaseMovieTvService {
         fetchMediaObjects(uri.toString(), listener, MEDIA_TYPE_TV);
     }
 
+    /**
+     * Fetching a single tv show, with trailer, similar and account states.
+     *
+     * @param id       mediaobject id
+     * @param listener fired when downloaded
+     * @see #fetchDetails(String, String, TmdbListener)
+     */
+    @Override
+    public void getDetails(int id, TmdbListener<MediaDetails> listener) {
+        fetchDetails(API_BASE_URL + URL_TV + id, MEDIA_TYPE_TV, listener);
+    }
+
     /**
      * Returning youtube id for given mediaId, if one is present.
      * The youtube ID references a trailer or teaser for the mediaobject
@@ -0,0 +1,74 @@
+package anders.olsen.moviebrowser.model;
+
+/**
+ * Whether a mediaobject is in the users favorite list and watchlist, and the users rating.
+ * Immutable, a change gives a new AccountState.
+ *
+ * @author Anders Engen Olsen
+ * @link https://developers.themoviedb.org/3/movies/get-movie-account-states
+ */
+public class AccountState {
+
+    private final boolean favorite;
+    private final boolean inWatchlist;
+    private final float rating;
+
+    /**
+     * Constructor.
+     *
+     * @param favorite    true if in the users favorite list
+     * @param inWatchlist true if in the users watchlist
+     * @param rating      the users rating, NaN if not rated
+     */
+    public AccountState(boolean favorite, boolean inWatchlist, float rating) {
+        this.favorite = favorite;
+        this.inWatchlist = inWatchlist;
+        this.rating = rating;
+    }
+
+    public boolean isFavorite() {
+        return favorite;
+    }
+
+    public boolean isInWatchlist() {
+        return inWatchlist;
+    }
+
+    /**
+     * @return true if rated by the user
+     */
+    public boolean isRated() {
+        return !Float.isNaN(rating);
+    }
+
+    /**
+     * @return the users rating, NaN if not rated
+     */
+    public float getRating() {
+        return rating;
+    }
+
+    /**
+     * @param favorite true if added to the favorite list, false if removed
+     * @return copy with the favorite list changed
+     */
+    public AccountState withFavorite(boolean favorite) {
+        return new AccountState(favorite, inWatchlist, rating);
+    }
+
+    /**
+     * @param inWatchlist true if added to the watchlist, false if removed
+     * @return copy with the watchlist changed
+     */
+    public AccountState withWatchlist(boolean inWatchlist) {
+        return new AccountState(favorite, inWatchlist, rating);
+    }
+
+    /**
+     * @param rating the users rating
+     * @return copy with the rating changed
+     */
+    public AccountState withRating(float rating) {
+        return new AccountState(favorite, inWatchlist, rating);
+    }
+}
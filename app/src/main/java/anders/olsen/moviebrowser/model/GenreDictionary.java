@@ -0,0 +1,71 @@
+package anders.olsen.moviebrowser.model;
+
+import android.util.SparseArray;
+
+/**
+ * Genre names by TMDB genre id, shared by all mediaobjects.
+ * <p>
+ * Mediaobjects only store genre ids, and find the names here when their genres are shown.
+ * Movie and tv genres are kept apart, since TMDB has a genre list for each.
+ * The names are published by the loader when read from the genre catalog or downloaded.
+ * Every publish increases the version, so mediaobjects know their genre string is outdated.
+ *
+ * @author Anders Engen Olsen
+ * @see MediaObject#getGenre()
+ */
+public final class GenreDictionary {
+
+    /**
+     * Movie genre names by id, replaced as a whole
+     */
+    private static volatile SparseArray<String> movieNames = new SparseArray<>();
+    /**
+     * Tv genre names by id, replaced as a whole
+     */
+    private static volatile SparseArray<String> tvNames = new SparseArray<>();
+    /**
+     * Increased for every publish
+     */
+    private static volatile int version;
+
+    /**
+     * Not instantiable.
+     */
+    private GenreDictionary() {
+    }
+
+    /**
+     * Replacing the genre names. The arrays must not be changed afterwards.
+     *
+     * @param movieGenreNames movie genre names by id
+     * @param tvGenreNames    tv genre names by id
+     */
+    public static synchronized void publish(SparseArray<String> movieGenreNames,
+                                            SparseArray<String> tvGenreNames) {
+        movieNames = movieGenreNames;
+        tvNames = tvGenreNames;
+        version++;
+    }
+
+    /**
+     * @param type mediaobject type, movie / tv. If null, both are searched
+     * @param id   genre id
+     * @return genre name, null if unknown
+     */
+    static String getName(String type, int id) {
+        if ("tv".equalsIgnoreCase(type))
+            return tvNames.get(id);
+        if ("movie".equalsIgnoreCase(type))
+            return movieNames.get(id);
+
+        String name = movieNames.get(id);
+        return (name != null) ? name : tvNames.get(id);
+    }
+
+    /**
+     * @return version of the genre names, increased for every publish
+     */
+    static int getVersion() {
+        return version;
+    }
+}
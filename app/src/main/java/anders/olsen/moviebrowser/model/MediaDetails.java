@@ -0,0 +1,72 @@
+package anders.olsen.moviebrowser.model;
+
+import java.util.ArrayList;
+
+/**
+ * Everything shown when a mediaobject is opened, downloaded in one request:
+ * the mediaobject, its trailer, the first page of similar mediaobjects, and whether it is in
+ * the users lists.
+ *
+ * @author Anders Engen Olsen
+ * @link https://developers.themoviedb.org/3/getting-started/append-to-response
+ */
+public class MediaDetails {
+
+    private final MediaObject mediaObject;
+    private final String trailerId;
+    private final ArrayList<MediaObject> similar;
+    private final boolean hasAccountStates;
+    private final boolean favorite;
+    private final boolean inWatchlist;
+
+    /**
+     * Constructor.
+     *
+     * @param mediaObject      the mediaobject
+     * @param trailerId        YouTube id of a trailer or teaser, null if none
+     * @param similar          first page of similar mediaobjects
+     * @param hasAccountStates true if favorite and inWatchlist are known, i.e. logged in
+     * @param favorite         true if in the users favorite list
+     * @param inWatchlist      true if in the users watchlist
+     */
+    public MediaDetails(MediaObject mediaObject, String trailerId,
+                        ArrayList<MediaObject> similar, boolean hasAccountStates,
+                        boolean favorite, boolean inWatchlist) {
+        this.mediaObject = mediaObject;
+        this.trailerId = trailerId;
+        this.similar = similar;
+        this.hasAccountStates = hasAccountStates;
+        this.favorite = favorite;
+        this.inWatchlist = inWatchlist;
+    }
+
+    public MediaObject getMediaObject() {
+        return mediaObject;
+    }
+
+    /**
+     * @return YouTube id of a trailer or teaser, null if none
+     */
+    public String getTrailerId() {
+        return trailerId;
+    }
+
+    public ArrayList<MediaObject> getSimilar() {
+        return similar;
+    }
+
+    /**
+     * @return true if isFavorite and isInWatchlist are known
+     */
+    public boolean hasAccountStates() {
+        return hasAccountStates;
+    }
+
+    public boolean isFavorite() {
+        return favorite;
+    }
+
+    public boolean isInWatchlist() {
+        return inWatchlist;
+    }
+}
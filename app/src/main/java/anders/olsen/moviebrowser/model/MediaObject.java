@@ -4,16 +4,28 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Objects;
 
+import anders.olsen.moviebrowser.util.EpochDay;
+
 /**
  * POJO representing a "MediaObject", meaning a Movie or TV shows downloaded from TMDB API.
  * Implementing Parcelable, so that it can be passed with intents.
  * <p>
  * Using BuilderPattern
+ * <p>
+ * Two mediaobjects are equal if they have the same type and id, i.e. they are the same movie
+ * or tv show. Built and unparcelled mediaobjects are interned, so the same movie shown in
+ * several lists is one object, as long as its content has not changed.
+ * <p>
+ * Fields are stored compact: the rating as a float, the release date as an epoch day, and
+ * the genres as TMDB genre ids, resolved through the {@link GenreDictionary}. The strings
+ * shown in the views are built the first time they are needed, and kept.
  *
  * @author Anders Engen Olsen.
  * @see MediaObjectBuilder
+ * @see MediaObjectPool
  * @see Parcelable
  */
 
@@ -22,14 +34,39 @@ public class MediaObject implements Parcelable {
     private final int id;
 
     private final String title;
-    private final String releaseDate;
-    private final String[] genre;
-    private final String rating;
+    /**
+     * Days since 1970-01-01, {@link EpochDay#NONE} if not known
+     */
+    private final int releaseDay;
+    /**
+     * TMDB genre ids
+     */
+    private final int[] genreIds;
+    /**
+     * Average vote, NaN if not known
+     */
+    private final float rating;
     private final String language;
     private final String handling;
     private final String imagePath;
     private final String type;
 
+    /**
+     * Hash of type and id, computed once
+     */
+    private final int hash;
+
+    /**
+     * Built when needed, see getters
+     */
+    private String releaseDateText;
+    private String ratingText;
+    private String genreText;
+    /**
+     * GenreDictionary version genreText was built with
+     */
+    private int genreVersion;
+
     /**
      * Constructor.
      *
@@ -39,13 +76,46 @@ public class MediaObject implements Parcelable {
     private MediaObject(MediaObjectBuilder mediaObjectBuilder) {
         this.id = mediaObjectBuilder.id;
         this.title = mediaObjectBuilder.title;
-        this.releaseDate = mediaObjectBuilder.releaseDate;
-        this.genre = mediaObjectBuilder.genre;
+        this.releaseDay = mediaObjectBuilder.releaseDay;
+        this.genreIds = mediaObjectBuilder.genreIds;
         this.rating = mediaObjectBuilder.rating;
         this.language = mediaObjectBuilder.language;
         this.handling = mediaObjectBuilder.handling;
         this.imagePath = mediaObjectBuilder.imagePath;
         this.type = mediaObjectBuilder.type;
+        this.hash = computeHash();
+    }
+
+    /**
+     * Constructor, key used to find a pooled mediaobject.
+     *
+     * @param type mediaobject type, movie / tv
+     * @param id   mediaobject id
+     */
+    private MediaObject(String type, int id) {
+        this.id = id;
+        this.title = null;
+        this.releaseDay = EpochDay.NONE;
+        this.genreIds = new int[0];
+        this.rating = Float.NaN;
+        this.language = null;
+        this.handling = null;
+        this.imagePath = null;
+        this.type = type;
+        this.hash = computeHash();
+    }
+
+    /**
+     * Finding a mediaobject which is in use, e.g. shown in a list, by type and id.
+     * Used to pass mediaobjects between activities without parcelling them.
+     *
+     * @param type mediaobject type, movie / tv
+     * @param id   mediaobject id
+     * @return the mediaobject, null if not in use, e.g. after the process was restarted
+     * @see MediaObjectPool
+     */
+    public static MediaObject find(String type, int id) {
+        return MediaObjectPool.find(new MediaObject(type, id));
     }
 
     /**
@@ -70,25 +140,72 @@ public class MediaObject implements Parcelable {
         return title;
     }
 
+    /**
+     * @return release date as yyyy-MM-dd, null if not known
+     */
     public String getReleaseDate() {
-        return releaseDate;
+        String text = releaseDateText;
+        if (text == null && releaseDay != EpochDay.NONE)
+            releaseDateText = text = EpochDay.format(releaseDay);
+        return text;
     }
 
     /**
-     * @return string-representation of the mediaobjects genres.
+     * @return release date as days since 1970-01-01, {@link EpochDay#NONE} if not known
+     */
+    public int getReleaseDay() {
+        return releaseDay;
+    }
+
+    /**
+     * The string is built once, and again only when the genre names have changed.
+     *
+     * @return string-representation of the mediaobjects genres. Unknown genres are left out
      */
     public String getGenre() {
-        StringBuilder builder = new StringBuilder();
+        int version = GenreDictionary.getVersion();
+        String text = genreText;
 
-        for (String s : genre) {
-            builder.append(s);
-            builder.append(" ");
+        if (text != null && genreVersion == version)
+            return text;
+
+        StringBuilder builder = new StringBuilder();
+        for (int id : genreIds) {
+            String name = GenreDictionary.getName(type, id);
+            if (name == null)
+                continue;
+            if (builder.length() > 0)
+                builder.append(" ");
+            builder.append(name);
         }
 
-        return builder.toString();
+        text = builder.toString();
+        genreText = text;
+        genreVersion = version;
+        return text;
+    }
+
+    /**
+     * @return TMDB genre ids
+     */
+    public int[] getGenreIds() {
+        return genreIds.clone();
     }
 
+    /**
+     * @return average vote as text, null if not known
+     */
     public String getRating() {
+        String text = ratingText;
+        if (text == null && !Float.isNaN(rating))
+            ratingText = text = String.format(Locale.US, "%.1f", rating);
+        return text;
+    }
+
+    /**
+     * @return average vote, NaN if not known
+     */
+    public float getRatingValue() {
         return rating;
     }
 
@@ -108,27 +225,45 @@ public class MediaObject implements Parcelable {
         return type;
     }
 
+    /**
+     * Same movie or tv show, same type and id.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MediaObject that = (MediaObject) o;
+        return id == that.id && hash == that.hash && Objects.equals(type, that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Comparing all fields, not only type and id.
+     *
+     * @param that mediaobject with same type and id
+     * @return true if all fields are equal
+     */
+    boolean hasSameContent(MediaObject that) {
         return id == that.id &&
                 Objects.equals(title, that.title) &&
-                Objects.equals(releaseDate, that.releaseDate) &&
-                Arrays.equals(genre, that.genre) &&
-                Objects.equals(rating, that.rating) &&
+                releaseDay == that.releaseDay &&
+                Arrays.equals(genreIds, that.genreIds) &&
+                Float.compare(rating, that.rating) == 0 &&
                 Objects.equals(language, that.language) &&
                 Objects.equals(handling, that.handling) &&
                 Objects.equals(imagePath, that.imagePath) &&
                 Objects.equals(type, that.type);
     }
 
-    @Override
-    public int hashCode() {
-        int result = Objects.hash(id, title, releaseDate, rating, language, handling, imagePath, type);
-        result = 31 * result + Arrays.hashCode(genre);
-        return result;
+    /**
+     * @return hash of type and id
+     */
+    private int computeHash() {
+        return 31 * id + (type == null ? 0 : type.hashCode());
     }
 
     /**
@@ -137,7 +272,7 @@ public class MediaObject implements Parcelable {
     public static final Creator<MediaObject> CREATOR = new Creator<MediaObject>() {
 
         public MediaObject createFromParcel(Parcel in) {
-            return new MediaObject(in);
+            return MediaObjectPool.intern(new MediaObject(in));
         }
 
         public MediaObject[] newArray(int size) {
@@ -154,13 +289,14 @@ public class MediaObject implements Parcelable {
     private MediaObject(Parcel in) {
         this.id = in.readInt();
         this.title = in.readString();
-        this.releaseDate = in.readString();
-        this.genre = in.createStringArray();
-        this.rating = in.readString();
+        this.releaseDay = in.readInt();
+        this.genreIds = in.createIntArray();
+        this.rating = in.readFloat();
         this.language = in.readString();
         this.handling = in.readString();
         this.imagePath = in.readString();
         this.type = in.readString();
+        this.hash = computeHash();
     }
 
     /**
@@ -170,9 +306,9 @@ public class MediaObject implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeInt(this.id);
         dest.writeString(this.title);
-        dest.writeString(this.releaseDate);
-        dest.writeStringArray(this.genre);
-        dest.writeString(this.rating);
+        dest.writeInt(this.releaseDay);
+        dest.writeIntArray(this.genreIds);
+        dest.writeFloat(this.rating);
         dest.writeString(this.language);
         dest.writeString(this.handling);
         dest.writeString(this.imagePath);
@@ -194,15 +330,10 @@ public class MediaObject implements Parcelable {
          */
         private final int id;
 
-        /**
-         * Base URL for pics
-         */
-        private final String POSTER_BASE_URL = "https://image.tmdb.org/t/p/w185";
-
         private String title;
-        private String releaseDate;
-        private String[] genre;
-        private String rating;
+        private int releaseDay = EpochDay.NONE;
+        private int[] genreIds = new int[0];
+        private float rating = Float.NaN;
         private String language;
         private String handling;
         private String imagePath;
@@ -222,17 +353,38 @@ public class MediaObject implements Parcelable {
             return this;
         }
 
+        /**
+         * @param releaseDate release date as yyyy-MM-dd, may be null
+         * @return builder
+         */
         public MediaObjectBuilder releaseDate(String releaseDate) {
-            this.releaseDate = releaseDate;
+            this.releaseDay = EpochDay.parse(releaseDate);
             return this;
         }
 
-        public MediaObjectBuilder genre(String[] genre) {
-            this.genre = genre;
+        /**
+         * @param releaseDay days since 1970-01-01, {@link EpochDay#NONE} if not known
+         * @return builder
+         */
+        public MediaObjectBuilder releaseDay(int releaseDay) {
+            this.releaseDay = releaseDay;
             return this;
         }
 
-        public MediaObjectBuilder rating(String rating) {
+        /**
+         * @param genreIds TMDB genre ids
+         * @return builder
+         */
+        public MediaObjectBuilder genreIds(int[] genreIds) {
+            this.genreIds = (genreIds == null) ? new int[0] : genreIds;
+            return this;
+        }
+
+        /**
+         * @param rating average vote, NaN if not known
+         * @return builder
+         */
+        public MediaObjectBuilder rating(float rating) {
             this.rating = rating;
             return this;
         }
@@ -247,8 +399,13 @@ public class MediaObject implements Parcelable {
             return this;
         }
 
+        /**
+         * @param imagePath poster path from TMDB, without base url and size
+         * @return builder
+         * @see anders.olsen.moviebrowser.image.ImageLoader
+         */
         public MediaObjectBuilder imagePath(String imagePath) {
-            this.imagePath = POSTER_BASE_URL + imagePath;
+            this.imagePath = imagePath;
             return this;
         }
 
@@ -258,10 +415,11 @@ public class MediaObject implements Parcelable {
         }
 
         /**
-         * @return MediaObject Built mediaobject
+         * @return MediaObject Built mediaobject, or an equal one with the same content
+         * @see MediaObjectPool
          */
         public MediaObject build() {
-            return new MediaObject(this);
+            return MediaObjectPool.intern(new MediaObject(this));
         }
     }
 }
@@ -0,0 +1,66 @@
+package anders.olsen.moviebrowser.model;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of the mediaobjects in use, one per type and id.
+ * <p>
+ * The same movie is downloaded again for every list it is in, e.g. popular, similar,
+ * search and the account lists. Interning a new mediaobject returns the one already in the
+ * pool if its content is the same, so the new one can be garbage collected. A new mediaobject
+ * with changed content replaces the one in the pool.
+ * <p>
+ * Mediaobjects are weakly referenced, and are removed from the pool when no longer used.
+ * A mediaobject in use can be found by type and id, so activities only pass type and id.
+ * Thread-safe, mediaobjects are built on background threads.
+ *
+ * @author Anders Engen Olsen
+ * @see MediaObject
+ */
+class MediaObjectPool {
+
+    /**
+     * Mediaobjects in use. Key and value are the same mediaobject,
+     * the value is weak so the key can be collected.
+     */
+    private static final WeakHashMap<MediaObject, WeakReference<MediaObject>> pool =
+            new WeakHashMap<>();
+
+    /**
+     * Not instantiable.
+     */
+    private MediaObjectPool() {
+    }
+
+    /**
+     * Finding the pooled mediaobject with the same type and id.
+     *
+     * @param mediaObject new mediaobject
+     * @return pooled mediaobject if it has the same content, else the new mediaobject,
+     * which is pooled
+     */
+    static synchronized MediaObject intern(MediaObject mediaObject) {
+        WeakReference<MediaObject> reference = pool.get(mediaObject);
+        MediaObject pooled = (reference == null) ? null : reference.get();
+
+        if (pooled != null && pooled.hasSameContent(mediaObject))
+            return pooled;
+
+        // WeakHashMap keeps the old key if present, it is removed to pool the new one
+        pool.remove(mediaObject);
+        pool.put(mediaObject, new WeakReference<>(mediaObject));
+        return mediaObject;
+    }
+
+    /**
+     * Finding the pooled mediaobject equal to the given key.
+     *
+     * @param key mediaobject with the type and id to find
+     * @return pooled mediaobject, null if not in use
+     */
+    static synchronized MediaObject find(MediaObject key) {
+        WeakReference<MediaObject> reference = pool.get(key);
+        return (reference == null) ? null : reference.get();
+    }
+}
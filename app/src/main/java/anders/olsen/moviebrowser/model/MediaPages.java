@@ -0,0 +1,46 @@
+package anders.olsen.moviebrowser.model;
+
+import java.util.ArrayList;
+
+/**
+ * Several pages of mediaobjects from TMDB, loaded at once and merged.
+ * <p>
+ * The number of pages is the number actually loaded, which may be less than requested if a
+ * page failed. The page size is the number of mediaobjects on the first page, before
+ * duplicates were removed, so it can be used to estimate the number of pages in a list.
+ *
+ * @author Anders Engen Olsen
+ */
+public class MediaPages {
+
+    private final ArrayList<MediaObject> mediaObjects;
+    private final int pageCount;
+    private final int pageSize;
+
+    public MediaPages(ArrayList<MediaObject> mediaObjects, int pageCount, int pageSize) {
+        this.mediaObjects = mediaObjects;
+        this.pageCount = pageCount;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return merged mediaobjects, in page order
+     */
+    public ArrayList<MediaObject> getMediaObjects() {
+        return mediaObjects;
+    }
+
+    /**
+     * @return number of pages loaded, from the first page requested
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return number of mediaobjects on the first page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+}
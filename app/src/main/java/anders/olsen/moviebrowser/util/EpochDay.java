@@ -0,0 +1,113 @@
+package anders.olsen.moviebrowser.util;
+
+/**
+ * Converting between ISO dates, yyyy-MM-dd as used by TMDB, and days since 1970-01-01.
+ * <p>
+ * A date stored as an epoch day is a single int, and dates compare as ints.
+ * java.time is not available before API 26, the conversion is done with the civil calendar
+ * algorithms by Howard Hinnant.
+ *
+ * @author Anders Engen Olsen
+ * @link http://howardhinnant.github.io/date_algorithms.html
+ */
+public final class EpochDay {
+
+    /**
+     * No date, or a date which could not be parsed
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    /**
+     * Not instantiable.
+     */
+    private EpochDay() {
+    }
+
+    /**
+     * @param date date as yyyy-MM-dd, may be null or empty
+     * @return days since 1970-01-01, {@link #NONE} if not a date, e.g. 2021-02-31
+     */
+    public static int parse(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-')
+            return NONE;
+
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+            return NONE;
+
+        year -= (month <= 2) ? 1 : 0;
+        // Rounded down, January and February of year 0 are in the era before
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @param epochDay days since 1970-01-01
+     * @return date as yyyy-MM-dd, null if {@link #NONE}
+     */
+    public static String format(int epochDay) {
+        if (epochDay == NONE)
+            return null;
+
+        int days = epochDay + 719468;
+        int era = (days >= 0 ? days : days - 146096) / 146097;
+        int dayOfEra = days - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex + (monthIndex < 10 ? 3 : -9);
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] date = new char[10];
+        pad(date, 0, 4, year);
+        date[4] = '-';
+        pad(date, 5, 7, month);
+        date[7] = '-';
+        pad(date, 8, 10, day);
+        return new String(date);
+    }
+
+    /**
+     * @return number of days in the month, February has 29 in leap years
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * @return the number in date[start, end), -1 if not only digits
+     */
+    private static int digits(String date, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Writing value into date[start, end), padded with zeros.
+     */
+    private static void pad(char[] date, int start, int end, int value) {
+        for (int i = end - 1; i >= start; i--) {
+            date[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package anders.olsen.moviebrowser.util;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Locale;
+
+/**
+ * Measuring the time between frames on the main thread, used to find jank.
+ * <p>
+ * While running, a callback is posted to the Choreographer for every frame. A frame which
+ * takes longer than 1.5 refresh intervals is counted as janky. A summary is written to the log
+ * when the monitor is stopped.
+ *
+ * @author Anders Engen Olsen
+ * @see Choreographer
+ */
+public class FrameTimeMonitor implements Choreographer.FrameCallback {
+
+    private final static String LOG_TAG = FrameTimeMonitor.class.getSimpleName();
+
+    /**
+     * Name in the log, e.g. the activity
+     */
+    private final String name;
+    /**
+     * Time between frames at the display refresh rate
+     */
+    private final long frameIntervalNanos;
+    /**
+     * True while frames are measured
+     */
+    private boolean running;
+    /**
+     * Time of the previous frame, 0 before the first frame
+     */
+    private long lastFrameNanos;
+    /**
+     * Number of frames measured
+     */
+    private int frames;
+    /**
+     * Number of frames longer than 1.5 refresh intervals
+     */
+    private int jankyFrames;
+    /**
+     * Number of refresh intervals without a new frame
+     */
+    private long droppedFrames;
+    /**
+     * Longest frame measured
+     */
+    private long worstFrameNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param name        name in the log
+     * @param refreshRate display refresh rate in frames per second
+     */
+    public FrameTimeMonitor(String name, float refreshRate) {
+        this.name = name;
+        this.frameIntervalNanos = (long) (1000000000L / Math.max(refreshRate, 1f));
+    }
+
+    /**
+     * Starting to measure frames.
+     * Must be called on the main thread.
+     */
+    public void start() {
+        if (running)
+            return;
+
+        running = true;
+        lastFrameNanos = 0;
+        frames = 0;
+        jankyFrames = 0;
+        droppedFrames = 0;
+        worstFrameNanos = 0;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stopping, writing a summary to the log.
+     * Must be called on the main thread.
+     */
+    public void stop() {
+        if (!running)
+            return;
+
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+
+        if (frames == 0)
+            return;
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%s: %d frames, %d janky (%.1f%%), %d dropped, worst %.1f ms",
+                name, frames, jankyFrames, 100f * jankyFrames / frames, droppedFrames,
+                worstFrameNanos / 1000000f));
+    }
+
+    /**
+     * Implementation of Choreographer.FrameCallback, called once per frame.
+     *
+     * @param frameTimeNanos time the frame started rendering
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running)
+            return;
+
+        if (lastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - lastFrameNanos;
+
+            frames++;
+            worstFrameNanos = Math.max(worstFrameNanos, frameNanos);
+
+            if (frameNanos > frameIntervalNanos * 3 / 2) {
+                jankyFrames++;
+                droppedFrames += frameNanos / frameIntervalNanos - 1;
+            }
+        }
+
+        lastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,78 @@
+package anders.olsen.moviebrowser.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import anders.olsen.moviebrowser.BuildConfig;
+
+/**
+ * Logging the time from a cold start to the first rows and the first poster in MainActivity.
+ * <p>
+ * The trace begins the first time MainActivity is created in the process, and ends when the
+ * first poster is shown. Later activities, e.g. after an orientation change, are not traced.
+ * Filter logcat on the tag to compare starts with and without a snapshot.
+ * Only traced in debug builds.
+ * <p>
+ * Must only be used on the main thread.
+ *
+ * @author Anders Engen Olsen
+ * @see anders.olsen.moviebrowser.database.HomeSnapshot
+ */
+public final class StartupTrace {
+
+    private final static String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    /**
+     * Time the trace began, 0 if not begun
+     */
+    private static long start;
+    /**
+     * True when the first poster has been shown, and the trace is done
+     */
+    private static boolean done;
+
+    /**
+     * Not instantiable.
+     */
+    private StartupTrace() {
+    }
+
+    /**
+     * Beginning the trace, unless it has already begun in this process, or this is a
+     * release build.
+     */
+    public static void begin() {
+        if (BuildConfig.DEBUG && start == 0)
+            start = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return true if the trace has begun, and the first poster is not shown yet
+     */
+    public static boolean isTracing() {
+        return start != 0 && !done;
+    }
+
+    /**
+     * Logging the time of an event, while tracing.
+     *
+     * @param event event, e.g. "Snapshot read"
+     */
+    public static void mark(String event) {
+        if (isTracing())
+            Log.i(LOG_TAG, event + " after " + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Logging the time to the first poster, and ending the trace.
+     *
+     * @param source where the rows came from, e.g. "snapshot"
+     */
+    public static void posterShown(String source) {
+        if (!isTracing())
+            return;
+
+        mark("First poster (" + source + ")");
+        done = true;
+    }
+}
@@ -0,0 +1,81 @@
+package anders.olsen.moviebrowser.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link EpochDay}.
+ *
+ * @author Anders Engen Olsen
+ */
+public class EpochDayTest {
+
+    @Test
+    public void parse_knownDates() {
+        assertEquals(0, EpochDay.parse("1970-01-01"));
+        assertEquals(-1, EpochDay.parse("1969-12-31"));
+        assertEquals(10957, EpochDay.parse("2000-01-01"));
+        assertEquals(18628, EpochDay.parse("2021-01-01"));
+        assertEquals(-719528, EpochDay.parse("0000-01-01"));
+    }
+
+    @Test
+    public void format_knownDates() {
+        assertEquals("1970-01-01", EpochDay.format(0));
+        assertEquals("1969-12-31", EpochDay.format(-1));
+        assertEquals("2000-01-01", EpochDay.format(10957));
+        assertEquals("0000-01-01", EpochDay.format(-719528));
+    }
+
+    @Test
+    public void roundTrip_everyDayFromYearZero() {
+        int first = EpochDay.parse("0000-01-01");
+        int last = EpochDay.parse("2100-12-31");
+
+        for (int day = first; day <= last; day++)
+            assertEquals(day, EpochDay.parse(EpochDay.format(day)));
+    }
+
+    @Test
+    public void roundTrip_yearZeroBeforeMarch() {
+        assertEquals("0000-01-31", EpochDay.format(EpochDay.parse("0000-01-31")));
+        assertEquals("0000-02-29", EpochDay.format(EpochDay.parse("0000-02-29")));
+        assertEquals("0001-02-28", EpochDay.format(EpochDay.parse("0001-02-28")));
+        assertEquals(EpochDay.parse("0000-02-29") + 1, EpochDay.parse("0000-03-01"));
+    }
+
+    @Test
+    public void parse_leapDays() {
+        assertEquals(EpochDay.parse("2020-02-28") + 1, EpochDay.parse("2020-02-29"));
+        assertEquals(EpochDay.parse("2000-02-28") + 1, EpochDay.parse("2000-02-29"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-02-29"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("1900-02-29"));
+    }
+
+    @Test
+    public void parse_invalidDates() {
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-02-31"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-04-31"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-00-10"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-13-01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-01-00"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-01-32"));
+    }
+
+    @Test
+    public void parse_malformed() {
+        assertEquals(EpochDay.NONE, EpochDay.parse(null));
+        assertEquals(EpochDay.NONE, EpochDay.parse(""));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-1-01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021/01/01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("20x1-01-01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2021-01-01T"));
+    }
+
+    @Test
+    public void format_none() {
+        assertNull(EpochDay.format(EpochDay.NONE));
+    }
+}